@@ -13,4 +13,16 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.CLASS)
 public @interface Build {
     Class<?>[] serviceProviders() default {};
+
+    /**
+     * Index passed to the constructor of a module service factory to build the service provider of the
+     * same position in {@link #serviceProviders()}, empty for a builder of a single implementation
+     */
+    int[] indexes() default {};
+
+    /**
+     * Name of the implementation built for the service provider of the same position in
+     * {@link #serviceProviders()}, empty string for an unnamed implementation, empty if none is named
+     */
+    String[] names() default {};
 }
@@ -19,6 +19,9 @@ import java.lang.annotation.Target;
  *     }
  *
  * </code></pre>
+ * Use {@link #scope()} to reuse the service implementation instead of building a new one each time,
+ * {@link #priority()} to order the implementations of a service provider, and {@link #name()} to
+ * build one of them by name.
  *
  * @author tablebird
  * @date 2019/7/30
@@ -26,4 +29,18 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.CLASS)
 public @interface ServiceImplementation {
+
+    ServiceScope scope() default ServiceScope.PROTOTYPE;
+
+    /**
+     * Implementations with higher priority are built first, implementations of same priority keep their
+     * discovery order
+     */
+    int priority() default 0;
+
+    /**
+     * Name to build this implementation alone, unique among the implementations of a service provider.
+     * Empty for an unnamed implementation
+     */
+    String name() default "";
 }
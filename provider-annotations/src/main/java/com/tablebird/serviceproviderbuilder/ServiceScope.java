@@ -0,0 +1,28 @@
+package com.tablebird.serviceproviderbuilder;
+
+/**
+ * Service implementation instance scope.
+ * <pre><code>
+ *     {@literal @}ServiceImplementation(scope = ServiceScope.SINGLETON) Service implementation
+ * </code></pre>
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public enum ServiceScope {
+
+    /**
+     * Build a new service implementation each time.
+     */
+    PROTOTYPE,
+
+    /**
+     * Service implementation is built once, on first build.
+     */
+    SINGLETON,
+
+    /**
+     * Service implementation is built once per thread.
+     */
+    THREAD
+}
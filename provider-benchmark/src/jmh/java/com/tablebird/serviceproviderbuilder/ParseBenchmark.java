@@ -0,0 +1,124 @@
+package com.tablebird.serviceproviderbuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Parsing of a provider-configuration file with thousands of entries, the single pass parser of
+ * {@link ServiceBuilderLoader} against the line based parser it replaced. In the same package as the
+ * loader to reach its package private parser.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    private static final String GENERATED_HEADER = "# Generated by service provider builder, crc32=";
+
+    @Param({"100", "1000", "5000"})
+    int entries;
+
+    /**
+     * Whether the file is written by the processor, with a checksum header
+     */
+    @Param({"true", "false"})
+    boolean generated;
+
+    private Path mFile;
+    private URL mUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (int i = 0; i < entries; i++) {
+            content.write(("com.tablebird.serviceproviderbuilder.benchmark.generated.Service" + entries
+                    + "Impl" + i + "_Builder\n").getBytes(StandardCharsets.UTF_8));
+        }
+        mFile = Files.createTempFile("service-builder-parse", null);
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        if (generated) {
+            CRC32 crc = new CRC32();
+            crc.update(content.toByteArray());
+            file.write(String.format("%s%08x\n", GENERATED_HEADER, crc.getValue()).getBytes(StandardCharsets.UTF_8));
+        }
+        content.writeTo(file);
+        Files.write(mFile, file.toByteArray());
+        mUrl = mFile.toUri().toURL();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(mFile);
+    }
+
+    @Benchmark
+    public Set<String> parse() {
+        return ServiceBuilderLoader.parse(ParseBenchmark.class, mUrl);
+    }
+
+    @Benchmark
+    public List<String> legacyParse() throws IOException {
+        return legacyParse(mUrl);
+    }
+
+    // The parser before the single pass rework: a substring and a trimmed string per line, every
+    // name validated and duplicates looked up in the list.
+    private static List<String> legacyParse(URL u) throws IOException {
+        ArrayList<String> names = new ArrayList<>();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(u.openStream(), StandardCharsets.UTF_8))) {
+            String ln;
+            while ((ln = r.readLine()) != null) {
+                int ci = ln.indexOf('#');
+                if (ci >= 0) ln = ln.substring(0, ci);
+                ln = ln.trim();
+                int n = ln.length();
+                if (n != 0) {
+                    if ((ln.indexOf(' ') >= 0) || (ln.indexOf('\t') >= 0))
+                        throw new IOException("Illegal configuration-file syntax");
+                    int cp = ln.codePointAt(0);
+                    if (!Character.isJavaIdentifierStart(cp))
+                        throw new IOException("Illegal provider-class name: " + ln);
+                    for (int i = Character.charCount(cp); i < n; i += Character.charCount(cp)) {
+                        cp = ln.codePointAt(i);
+                        if (!Character.isJavaIdentifierPart(cp) && (cp != '.'))
+                            throw new IOException("Illegal provider-class name: " + ln);
+                    }
+                    if (!names.contains(ln))
+                        names.add(ln);
+                }
+            }
+        }
+        return names;
+    }
+}
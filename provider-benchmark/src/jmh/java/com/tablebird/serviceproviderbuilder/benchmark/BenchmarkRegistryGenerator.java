@@ -0,0 +1,62 @@
+package com.tablebird.serviceproviderbuilder.benchmark;
+
+import com.tablebird.serviceproviderbuilder.plugin.BuilderElement;
+import com.tablebird.serviceproviderbuilder.plugin.ServiceBuilderRegistryGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javassist.ClassPool;
+
+/**
+ * Generate the registry loader and index classes of the benchmark services with the generator of the gradle
+ * plugin, as the plugin does for an app. Run by the {@code generateBenchmarkRegistry} task with the compiled
+ * benchmark classes on the classpath, arguments are the output directory and the implementation counts.
+ * The plugin is not on the benchmark runtime classpath, so no signature of this class names its types.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public final class BenchmarkRegistryGenerator {
+
+    private BenchmarkRegistryGenerator() {
+        throw new AssertionError("No instances.");
+    }
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args[0]);
+        List<BuilderElement> elements = new ArrayList<>();
+        for (String countArgument : args[1].split(",")) {
+            int count = Integer.parseInt(countArgument);
+            LinkedHashSet<String> builderNames = new LinkedHashSet<>();
+            for (int i = 0; i < count; i++) {
+                builderNames.add(BenchmarkServices.getBuilderName(count, i));
+            }
+            BuilderElement element = new BuilderElement(BenchmarkServices.getServiceName(count));
+            element.setValues(builderNames);
+            elements.add(element);
+        }
+        BuilderElement singleService = new BuilderElement(SingleService.class.getName(), true);
+        singleService.setValues(new LinkedHashSet<>(Collections.singleton(SingleServiceImpl.Builder.class.getName())));
+        elements.add(singleService);
+
+        Map<String, byte[]> classes = new ServiceBuilderRegistryGenerator(new ClassPool(true)).generate(elements);
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            write(new File(dir, entry.getKey().replace('.', '/') + ".class"), entry.getValue());
+        }
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        Files.write(file.toPath(), bytes);
+    }
+}
@@ -0,0 +1,104 @@
+package com.tablebird.serviceproviderbuilder.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Fixtures over the generated benchmark services, {@code ServiceN} has N implementations
+ * {@code ServiceNImplI} built by {@code ServiceNImplI_Builder}.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+final class BenchmarkServices {
+
+    private static final String GENERATED_PACKAGE = "com.tablebird.serviceproviderbuilder.benchmark.generated";
+    private static final String BUILDER_CONFIGURATION = "META-INF/services/builder/";
+    private static final String SERVICE_LOADER_CONFIGURATION = "META-INF/services/";
+
+    private BenchmarkServices() {
+        throw new AssertionError("No instances.");
+    }
+
+    static String getServiceName(int count) {
+        return GENERATED_PACKAGE + ".Service" + count;
+    }
+
+    static Class<?> getService(ClassLoader classLoader, int count) throws ClassNotFoundException {
+        return Class.forName(getServiceName(count), true, classLoader);
+    }
+
+    private static String getImplementationName(int count, int index) {
+        return getServiceName(count) + "Impl" + index;
+    }
+
+    static String getBuilderName(int count, int index) {
+        return getImplementationName(count, index) + "_Builder";
+    }
+
+    /**
+     * Write the provider-configuration files of {@code ServiceN} spread over jarCount jars, both the builder
+     * files read by {@link com.tablebird.serviceproviderbuilder.ServiceBuilderLoader} and the files read by
+     * {@link java.util.ServiceLoader}. Jars without any implementation stand for the rest of a big classpath.
+     */
+    static URL[] writeConfigurationJars(Path dir, int count, int jarCount) throws IOException {
+        String serviceName = getServiceName(count);
+        URL[] urls = new URL[jarCount];
+        for (int jar = 0; jar < jarCount; jar++) {
+            List<String> builders = new ArrayList<>();
+            List<String> implementations = new ArrayList<>();
+            for (int i = jar; i < count; i += jarCount) {
+                builders.add(getBuilderName(count, i));
+                implementations.add(getImplementationName(count, i));
+            }
+            File file = dir.resolve("services-" + count + "-" + jar + ".jar").toFile();
+            try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(file.toPath()))) {
+                output.putNextEntry(new JarEntry("META-INF/placeholder"));
+                if (!builders.isEmpty()) {
+                    writeEntry(output, BUILDER_CONFIGURATION + serviceName, builders);
+                    writeEntry(output, SERVICE_LOADER_CONFIGURATION + serviceName, implementations);
+                }
+            }
+            urls[jar] = file.toURI().toURL();
+        }
+        return urls;
+    }
+
+    private static void writeEntry(JarOutputStream output, String name, List<String> lines) throws IOException {
+        output.putNextEntry(new JarEntry(name));
+        for (String line : lines) {
+            output.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        output.closeEntry();
+    }
+
+    /**
+     * Class loader loading the whole benchmark classpath again, so nothing is loaded or cached yet
+     */
+    static URLClassLoader createIsolatedClassLoader(URL[] configurationJars) throws IOException {
+        String[] classPath = System.getProperty("java.class.path").split(File.pathSeparator);
+        URL[] urls = new URL[classPath.length + configurationJars.length];
+        for (int i = 0; i < classPath.length; i++) {
+            urls[i] = new File(classPath[i]).toURI().toURL();
+        }
+        System.arraycopy(configurationJars, 0, urls, classPath.length, configurationJars.length);
+        return new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+    }
+
+    static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
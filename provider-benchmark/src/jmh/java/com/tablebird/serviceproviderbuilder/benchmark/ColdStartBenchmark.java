@@ -0,0 +1,111 @@
+package com.tablebird.serviceproviderbuilder.benchmark;
+
+import com.tablebird.serviceproviderbuilder.ServiceBuilder;
+import com.tablebird.serviceproviderbuilder.ServiceBuilderLoader;
+import com.tablebird.serviceproviderbuilder.ServiceProviderBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First lookup in a fresh class loader, including class loading of the library, the services and
+ * their builders. The registry loader generated by {@link BenchmarkRegistryGenerator} is on the classpath,
+ * so {@link ServiceProviderBuilder} finds the builders by the registry, the provider-configuration files are
+ * read by {@link ServiceBuilderLoader} itself.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 50)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ColdStartBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    int implementations;
+
+    @Param({"1", "100"})
+    int jars;
+
+    private Path mDir;
+    private URL[] mConfigurationJars;
+    private URLClassLoader mClassLoader;
+    private Class<?> mService;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        mDir = Files.createTempDirectory("service-builder-benchmark");
+        mConfigurationJars = BenchmarkServices.writeConfigurationJars(mDir, implementations, jars);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        BenchmarkServices.delete(mDir);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException, ClassNotFoundException {
+        mClassLoader = BenchmarkServices.createIsolatedClassLoader(mConfigurationJars);
+        mService = BenchmarkServices.getService(mClassLoader, implementations);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        mClassLoader.close();
+    }
+
+    @Benchmark
+    public void registry(Blackhole blackhole) throws ReflectiveOperationException {
+        Class<?> serviceProviderBuilder = Class.forName(ServiceProviderBuilder.class.getName(), true, mClassLoader);
+        Method buildServiceSet = serviceProviderBuilder.getMethod("buildServiceSet", Class.class, ClassLoader.class);
+        consume((Iterator<?>) buildServiceSet.invoke(null, mService, mClassLoader), blackhole);
+    }
+
+    @Benchmark
+    public void serviceBuilderLoader(Blackhole blackhole) throws ReflectiveOperationException {
+        Class<?> serviceBuilderLoader = Class.forName(ServiceBuilderLoader.class.getName(), true, mClassLoader);
+        Method load = serviceBuilderLoader.getMethod("load", Class.class, ClassLoader.class);
+        Method build = Class.forName(ServiceBuilder.class.getName(), false, mClassLoader).getMethod("build");
+        for (Object serviceBuilder : (Iterable<?>) load.invoke(null, mService, mClassLoader)) {
+            blackhole.consume(build.invoke(serviceBuilder));
+        }
+    }
+
+    @Benchmark
+    public void serviceLoader(Blackhole blackhole) {
+        for (Object service : ServiceLoader.load(mService, mClassLoader)) {
+            blackhole.consume(service);
+        }
+    }
+
+    private static void consume(Iterator<?> iterator, Blackhole blackhole) {
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.tablebird.serviceproviderbuilder.benchmark;
+
+import com.tablebird.serviceproviderbuilder.ServiceHandle;
+import com.tablebird.serviceproviderbuilder.ServiceProviderBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady state lookups through the {@link com.tablebird.serviceproviderbuilder.ServiceBuilderRegistry}
+ * path, builders already cached by {@link ServiceProviderBuilder}. The registry loader is generated by
+ * {@link BenchmarkRegistryGenerator}.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LookupBenchmark {
+
+    private static final ServiceHandle<SingleService> SINGLE_SERVICE = ServiceProviderBuilder.handle(SingleService.class);
+
+    @State(Scope.Benchmark)
+    public static class ServiceSetState {
+        @Param({"1", "10", "100", "1000"})
+        int implementations;
+
+        Class<?> service;
+
+        @Setup(Level.Trial)
+        public void setUp() throws ClassNotFoundException {
+            service = BenchmarkServices.getService(getClass().getClassLoader(), implementations);
+            ServiceProviderBuilder.invalidate(service);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SingleServiceState {
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ServiceProviderBuilder.invalidate(SingleService.class);
+        }
+    }
+
+    @Benchmark
+    public void buildServiceSet(ServiceSetState state, Blackhole blackhole) {
+        Iterator<?> iterator = ServiceProviderBuilder.buildServiceSet(state.service);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void buildServiceSetContended(ServiceSetState state, Blackhole blackhole) {
+        buildServiceSet(state, blackhole);
+    }
+
+    @Benchmark
+    public SingleService buildSingleService(SingleServiceState state) {
+        return ServiceProviderBuilder.buildSingleService(SingleService.class);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public SingleService buildSingleServiceContended(SingleServiceState state) {
+        return ServiceProviderBuilder.buildSingleService(SingleService.class);
+    }
+
+    @Benchmark
+    public SingleService handle(SingleServiceState state) {
+        return SINGLE_SERVICE.get();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public SingleService handleContended(SingleServiceState state) {
+        return SINGLE_SERVICE.get();
+    }
+}
@@ -0,0 +1,115 @@
+package com.tablebird.serviceproviderbuilder.benchmark;
+
+import com.tablebird.serviceproviderbuilder.ServiceBuilder;
+import com.tablebird.serviceproviderbuilder.ServiceBuilderLoader;
+import com.tablebird.serviceproviderbuilder.ServiceProviderBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups resolving the builders again on every call, through the registry loaded by the loader generated by
+ * {@link BenchmarkRegistryGenerator}, the
+ * {@link ServiceBuilderLoader} fallback and plain {@link ServiceLoader} as baseline.
+ * Classes are loaded already, see {@link ColdStartBenchmark} for first lookups.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResolveBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class RegistryState {
+        @Param({"1", "10", "100", "1000"})
+        int implementations;
+
+        Class<?> service;
+
+        @Setup(Level.Trial)
+        public void setUp() throws ClassNotFoundException {
+            service = BenchmarkServices.getService(getClass().getClassLoader(), implementations);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ConfigurationState {
+        @Param({"1", "10", "100", "1000"})
+        int implementations;
+
+        @Param({"1", "100"})
+        int jars;
+
+        Path dir;
+        URLClassLoader classLoader;
+        Class<?> service;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, ClassNotFoundException {
+            dir = Files.createTempDirectory("service-builder-benchmark");
+            classLoader = new URLClassLoader(BenchmarkServices.writeConfigurationJars(dir, implementations, jars),
+                    getClass().getClassLoader());
+            service = BenchmarkServices.getService(classLoader, implementations);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            classLoader.close();
+            BenchmarkServices.delete(dir);
+        }
+    }
+
+    @Benchmark
+    public void registry(RegistryState state, Blackhole blackhole) {
+        ServiceProviderBuilder.invalidate(state.service);
+        Iterator<?> iterator = ServiceProviderBuilder.buildServiceSet(state.service);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public void serviceBuilderLoader(ConfigurationState state, Blackhole blackhole) {
+        for (ServiceBuilder<?> serviceBuilder : ServiceBuilderLoader.load(state.service, state.classLoader)) {
+            blackhole.consume(serviceBuilder.build());
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void serviceBuilderLoaderContended(ConfigurationState state, Blackhole blackhole) {
+        serviceBuilderLoader(state, blackhole);
+    }
+
+    @Benchmark
+    public void serviceLoader(ConfigurationState state, Blackhole blackhole) {
+        for (Object service : ServiceLoader.load(state.service, state.classLoader)) {
+            blackhole.consume(service);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void serviceLoaderContended(ConfigurationState state, Blackhole blackhole) {
+        serviceLoader(state, blackhole);
+    }
+}
@@ -0,0 +1,13 @@
+package com.tablebird.serviceproviderbuilder.benchmark;
+
+import com.tablebird.serviceproviderbuilder.ServiceProvider;
+import com.tablebird.serviceproviderbuilder.ServiceProviderPolicy;
+
+/**
+ * @author tablebird
+ * @date 2026/10/18
+ */
+@ServiceProvider(ServiceProviderPolicy.SINGLE)
+public interface SingleService {
+    int id();
+}
@@ -0,0 +1,22 @@
+package com.tablebird.serviceproviderbuilder.benchmark;
+
+import com.tablebird.serviceproviderbuilder.ServiceBuilder;
+
+/**
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public class SingleServiceImpl implements SingleService {
+
+    @Override
+    public int id() {
+        return 0;
+    }
+
+    public static final class Builder implements ServiceBuilder<SingleService> {
+        @Override
+        public SingleService build() {
+            return new SingleServiceImpl();
+        }
+    }
+}
@@ -22,5 +22,7 @@
 -keep class com.tablebird.serviceproviderbuilder.*
 -keep public class * extends com.tablebird.serviceproviderbuilder.ServiceBuilder{
 }
+-keep public class * extends com.tablebird.serviceproviderbuilder.ServiceProviderMetadata{
+}
 -keep @com.tablebird.serviceproviderbuilder.ServiceProvider class * {}
-
+-keep class com.tablebird.serviceproviderbuilder.ServiceBuilderRegistry_Loader { <init>(); }
@@ -0,0 +1,114 @@
+package com.tablebird.serviceproviderbuilder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+
+/**
+ * Resolved service builders of one service provider interface. The entry itself is the lock
+ * of the first resolution, so a slow load of one service never blocks lookups of the others.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+final class ServiceBuilderEntry {
+
+    private final Class<?> mService;
+
+    private volatile ServiceProviderMetadata<?> mMetadata;
+
+    private volatile ServiceBuilder<?>[] mServiceBuilders;
+
+    // Written before mServiceBuilders, so it is visible once the builders are
+    private Map<String, ServiceBuilder<?>> mNamedServiceBuilders = Collections.emptyMap();
+
+    private volatile ServiceConfigurationError mServiceConfigurationError;
+
+    private volatile BuilderInstantiationException mProviderPolicyException;
+
+    ServiceBuilderEntry(Class<?> service) {
+        mService = service;
+    }
+
+    Class<?> getService() {
+        return mService;
+    }
+
+    /**
+     * @return metadata of service provider interface, or null if not resolved yet
+     */
+    ServiceProviderMetadata<?> getMetadata() {
+        return mMetadata;
+    }
+
+    void setMetadata(ServiceProviderMetadata<?> metadata) {
+        mMetadata = metadata;
+    }
+
+    /**
+     * @return resolved service builders, empty if service has no implementation, or null if not
+     * resolved yet
+     */
+    ServiceBuilder<?>[] getServiceBuilders() {
+        return mServiceBuilders;
+    }
+
+    /**
+     * @throws ServiceConfigurationError two implementations have the same name
+     */
+    void setServiceBuilders(ServiceBuilder<?>[] serviceBuilders) {
+        mNamedServiceBuilders = indexNames(serviceBuilders);
+        mServiceBuilders = serviceBuilders;
+    }
+
+    /**
+     * @return resolved service builder of the named implementation, or null if no implementation has the
+     * name or not resolved yet
+     */
+    ServiceBuilder<?> getServiceBuilder(String name) {
+        return mServiceBuilders != null ? mNamedServiceBuilders.get(name) : null;
+    }
+
+    private Map<String, ServiceBuilder<?>> indexNames(ServiceBuilder<?>[] serviceBuilders) {
+        Map<String, ServiceBuilder<?>> result = null;
+        for (ServiceBuilder<?> serviceBuilder : serviceBuilders) {
+            String name = serviceBuilder instanceof AbstractServiceBuilder ? ((AbstractServiceBuilder<?>) serviceBuilder).getName() : null;
+            if (name == null) {
+                continue;
+            }
+            if (result == null) {
+                result = new HashMap<>();
+            }
+            ServiceBuilder<?> other = result.put(name, serviceBuilder);
+            if (other != null) {
+                throw new ServiceConfigurationError(String.format("%s implementations %s and %s have same name %s",
+                        mService.getName(), other.getClass().getName(), serviceBuilder.getClass().getName(), name));
+            }
+        }
+        return result != null ? result : Collections.<String, ServiceBuilder<?>>emptyMap();
+    }
+
+    /**
+     * @return the error of last resolution, or null if resolved successfully or not resolved yet
+     */
+    ServiceConfigurationError getServiceConfigurationError() {
+        return mServiceConfigurationError;
+    }
+
+    void setServiceConfigurationError(ServiceConfigurationError serviceConfigurationError) {
+        mServiceConfigurationError = serviceConfigurationError;
+    }
+
+    /**
+     * @return the violation of the single policy found by last resolution, or null if resolved successfully
+     * or not resolved yet
+     */
+    BuilderInstantiationException getProviderPolicyException() {
+        return mProviderPolicyException;
+    }
+
+    void setProviderPolicyException(BuilderInstantiationException providerPolicyException) {
+        mProviderPolicyException = providerPolicyException;
+    }
+}
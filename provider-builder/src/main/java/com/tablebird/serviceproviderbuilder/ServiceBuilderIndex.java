@@ -0,0 +1,153 @@
+package com.tablebird.serviceproviderbuilder;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Service builder names of all binary service indexes visible to a class loader, each index is read
+ * once per class loader. The index is written by the processor, see {@code ServicesFiles} for the layout.
+ * <p>
+ * An index resource may hold the indexes of several artifacts, as merged into an APK, each section adds
+ * the services it lists. The configuration files of a service listed by any index are not located,
+ * configuration files of artifacts without index, as built by an older processor or written by hand, are
+ * read for the services no index lists only.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+final class ServiceBuilderIndex {
+
+    private static final String PATH = "META-INF/services/builder.index";
+    private static final int MAGIC = 0x53504249;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 10;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<ClassLoader, ServiceBuilderIndex> sIndexes = new WeakHashMap<>();
+
+    private final Map<String, List<String>> mServiceBuilderNames;
+
+    private ServiceBuilderIndex(Map<String, List<String>> serviceBuilderNames) {
+        mServiceBuilderNames = serviceBuilderNames;
+    }
+
+    /**
+     * @return builder names of service in indexes, or null if service is not indexed
+     */
+    List<String> getServiceBuilderNames(String serviceName) {
+        return mServiceBuilderNames.get(serviceName);
+    }
+
+    /**
+     * @param service the service being looked up, used to construct error detail strings
+     * @throws ServiceConfigurationError if an index can not be read or is malformed
+     */
+    static ServiceBuilderIndex get(ClassLoader loader, Class<?> service) throws ServiceConfigurationError {
+        synchronized (sIndexes) {
+            ServiceBuilderIndex index = sIndexes.get(loader);
+            if (index == null) {
+                index = load(loader, service);
+                sIndexes.put(loader, index);
+            }
+            return index;
+        }
+    }
+
+    private static ServiceBuilderIndex load(ClassLoader loader, Class<?> service) throws ServiceConfigurationError {
+        Map<String, Set<String>> serviceBuilderNames = new HashMap<>();
+        try {
+            Enumeration<URL> indexes = loader == null ? ClassLoader.getSystemResources(PATH) : loader.getResources(PATH);
+            while (indexes.hasMoreElements()) {
+                URL url = indexes.nextElement();
+                ServiceBuilderListener listener = ServiceProviderBuilder.getListener();
+                long start = listener != null ? System.nanoTime() : 0;
+                parse(url, ServiceBuilderLoader.read(url), serviceBuilderNames);
+                if (listener != null) {
+                    listener.onConfigurationParsed(service, url, System.nanoTime() - start);
+                }
+            }
+        } catch (IOException x) {
+            throw new ServiceConfigurationError(service.getName() + ": Error reading service index", x);
+        } catch (RuntimeException x) {
+            throw new ServiceConfigurationError(service.getName() + ": Illegal service index", x);
+        }
+        Map<String, List<String>> result = new HashMap<>(serviceBuilderNames.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Set<String>> entry : serviceBuilderNames.entrySet()) {
+            result.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        return new ServiceBuilderIndex(result);
+    }
+
+    // Parse all indexes in the content, skipping anything between them, an merged resource may
+    // contain several indexes.
+    //
+    private static void parse(URL url, byte[] content, Map<String, Set<String>> serviceBuilderNames)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int position = 0;
+        while (position + HEADER_SIZE <= content.length) {
+            if (buffer.getInt(position) != MAGIC) {
+                position++;
+                continue;
+            }
+            if (buffer.getShort(position + 4) != VERSION) {
+                throw new IOException(url + ": Unsupported service index version " + buffer.getShort(position + 4));
+            }
+            int start = position + HEADER_SIZE;
+            int length = buffer.getInt(position + 6);
+            if (length < 0 || start + length > content.length) {
+                throw new IOException(url + ": Truncated service index");
+            }
+            parseIndex(buffer, start, serviceBuilderNames);
+            position = start + length;
+        }
+    }
+
+    private static void parseIndex(ByteBuffer buffer, int start, Map<String, Set<String>> serviceBuilderNames) {
+        int serviceCount = buffer.getInt(start);
+        int builderCount = buffer.getInt(start + 4);
+        int stringCount = buffer.getInt(start + 8);
+        int services = start + 12;
+        int builders = services + serviceCount * 12;
+        int offsets = builders + builderCount * 4;
+        int data = offsets + (stringCount + 1) * 4;
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < serviceCount; i++) {
+            int service = services + i * 12;
+            String serviceName = getString(buffer, offsets, data, strings, buffer.getInt(service));
+            Set<String> names = serviceBuilderNames.get(serviceName);
+            if (names == null) {
+                names = new LinkedHashSet<>();
+                serviceBuilderNames.put(serviceName, names);
+            }
+            int first = buffer.getInt(service + 4);
+            int count = buffer.getInt(service + 8);
+            for (int j = first; j < first + count; j++) {
+                names.add(getString(buffer, offsets, data, strings, buffer.getInt(builders + j * 4)));
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer buffer, int offsets, int data, String[] strings, int index) {
+        String string = strings[index];
+        if (string == null) {
+            int begin = buffer.getInt(offsets + index * 4);
+            int end = buffer.getInt(offsets + (index + 1) * 4);
+            string = new String(buffer.array(), data + begin, end - begin, UTF_8);
+            strings[index] = string;
+        }
+        return string;
+    }
+}
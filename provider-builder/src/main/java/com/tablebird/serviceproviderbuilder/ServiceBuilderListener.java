@@ -0,0 +1,72 @@
+package com.tablebird.serviceproviderbuilder;
+
+import androidx.annotation.NonNull;
+
+import java.net.URL;
+
+/**
+ * Listener of service lookups and builds, install by {@link ServiceProviderBuilder#setListener}.
+ * Callbacks run on the thread doing the lookup or build, so they should be cheap and thread safe.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ * @see ServiceBuilderMetrics
+ */
+public interface ServiceBuilderListener {
+
+    /**
+     * Service builders are found in the cache of {@link ServiceProviderBuilder}
+     *
+     * @param service service provider class
+     */
+    void onCacheHit(@NonNull Class<?> service);
+
+    /**
+     * Service builders are not in the cache of {@link ServiceProviderBuilder} and will be resolved
+     *
+     * @param service service provider class
+     */
+    void onCacheMiss(@NonNull Class<?> service);
+
+    /**
+     * Service builders are resolved from {@link ServiceBuilderRegistry}
+     *
+     * @param service service provider class
+     */
+    void onRegistryHit(@NonNull Class<?> service);
+
+    /**
+     * Service builders are not registered and will be loaded by {@link ServiceBuilderLoader}
+     *
+     * @param service service provider class
+     */
+    void onLoaderFallback(@NonNull Class<?> service);
+
+    /**
+     * A provider-configuration file is parsed by {@link ServiceBuilderLoader}
+     *
+     * @param service       service provider class
+     * @param url           url of the configuration file
+     * @param durationNanos time spent to parse the configuration file
+     */
+    void onConfigurationParsed(@NonNull Class<?> service, @NonNull URL url, long durationNanos);
+
+    /**
+     * A service builder is loaded and instantiated by {@link ServiceBuilderLoader}
+     *
+     * @param service            service provider class
+     * @param builderName        class name of service builder
+     * @param loadNanos          time spent to load the class of service builder
+     * @param instantiationNanos time spent to instantiate service builder
+     */
+    void onBuilderInstantiated(@NonNull Class<?> service, @NonNull String builderName, long loadNanos, long instantiationNanos);
+
+    /**
+     * A service implementation is built by {@link ServiceBuilder#build()}
+     *
+     * @param service        service provider class
+     * @param serviceBuilder service builder
+     * @param durationNanos  time spent to build
+     */
+    void onServiceBuilt(@NonNull Class<?> service, @NonNull ServiceBuilder<?> serviceBuilder, long durationNanos);
+}
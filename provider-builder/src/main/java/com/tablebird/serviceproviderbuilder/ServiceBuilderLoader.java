@@ -1,11 +1,20 @@
 package com.tablebird.serviceproviderbuilder;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
 
 /**
  * @author tablebird
@@ -14,12 +23,31 @@ import java.util.*;
 public class ServiceBuilderLoader<S> implements Iterable<ServiceBuilder<S>>{
     private static final String PREFIX = "META-INF/services/builder/";
 
+    // Header of the configuration files written by the processor, followed by
+    // the hex CRC32 of the content after the header line
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] GENERATED_HEADER = "# Generated by service provider builder, crc32=".getBytes(UTF_8);
+    private static final int CHECKSUM_LENGTH = 8;
+
+    // Separates the class name of a module service factory from the index of the
+    // service implementation it builds
+    private static final char INDEX_SEPARATOR = ':';
+
+    // Provider classes, by class loader and class name. A class is strongly reachable from
+    // its class loader, so a weakly held class lives as long as the class loader and the
+    // cache never keeps the class loader reachable
+    private static final Map<ClassLoader, ConcurrentHashMap<String, WeakReference<Class<?>>>> sProviderClasses = new WeakHashMap<>();
+
     // The class or interface representing the service being loaded
     private final Class<S> service;
 
     // The class loader used to locate, load, and instantiate providers
     private final ClassLoader loader;
 
+    // The executor parsing configuration files and resolving provider classes
+    // ahead of the iteration, or null to do all work lazily on the calling thread
+    private final Executor executor;
+
     // The access control context taken when the ServiceLoader is created
     // Android-changed: do not use legacy security code.
     // private final AccessControlContext acc;
@@ -39,23 +67,26 @@ public class ServiceBuilderLoader<S> implements Iterable<ServiceBuilder<S>>{
      * providers from scratch, just as is done by a newly-created loader.
      *
      * <p> This method is intended for use in situations in which new providers
-     * can be installed into a running Java virtual machine.
+     * can be installed into a running Java virtual machine, so the builders cached
+     * by {@link ServiceProviderBuilder} for this service are invalidated as well.
      */
     public void reload() {
         providers.clear();
         lookupIterator = new LazyIterator(service, loader);
+        ServiceProviderBuilder.invalidate(service);
     }
 
-    private ServiceBuilderLoader(Class<S> service, ClassLoader cl) {
+    private ServiceBuilderLoader(Class<S> service, ClassLoader cl, Executor executor) {
         if (service == null) {
             throw new NullPointerException("service is null");
         }
         this.service = service;
         loader = (cl == null) ? ClassLoader.getSystemClassLoader() : cl;
+        this.executor = executor;
         // Android-changed: Do not use legacy security code.
         // On Android, System.getSecurityManager() is always null.
         // acc = (System.getSecurityManager() != null) ? AccessController.getContext() : null;
-        reload();
+        lookupIterator = new LazyIterator(service, loader);
     }
 
     private static void fail(Class<?> service, String msg, Throwable cause)
@@ -77,39 +108,93 @@ public class ServiceBuilderLoader<S> implements Iterable<ServiceBuilder<S>>{
         fail(service, u + ":" + line + ": " + msg);
     }
 
-    // Parse a single line from the given configuration file, adding the name
-    // on the line to the names list.
+    // Parse a single line of the given configuration content, adding the name
+    // on the line to the names set. Names of generated content are not validated.
     //
-    private int parseLine(Class<?> service, URL u, BufferedReader r, int lc,
-                          List<String> names)
-            throws IOException, ServiceConfigurationError
+    private static void parseLine(Class<?> service, URL u, byte[] content, int begin, int end,
+                                  int lc, boolean generated, Set<String> names)
+            throws ServiceConfigurationError
     {
-        String ln = r.readLine();
-        if (ln == null) {
-            return -1;
+        for (int i = begin; i < end; i++) {
+            if (content[i] == '#') {
+                end = i;
+                break;
+            }
+        }
+        while (begin < end && (content[begin] & 0xff) <= ' ') begin++;
+        while (end > begin && (content[end - 1] & 0xff) <= ' ') end--;
+        if (begin == end) {
+            return;
         }
-        int ci = ln.indexOf('#');
-        if (ci >= 0) ln = ln.substring(0, ci);
-        ln = ln.trim();
-        int n = ln.length();
-        if (n != 0) {
-            if ((ln.indexOf(' ') >= 0) || (ln.indexOf('\t') >= 0))
-                fail(service, u, lc, "Illegal configuration-file syntax");
+        String ln = new String(content, begin, end - begin, UTF_8);
+        if (!generated) {
+            int n = ln.length();
             int cp = ln.codePointAt(0);
             if (!Character.isJavaIdentifierStart(cp))
                 fail(service, u, lc, "Illegal provider-class name: " + ln);
             for (int i = Character.charCount(cp); i < n; i += Character.charCount(cp)) {
                 cp = ln.codePointAt(i);
+                if ((cp == ' ') || (cp == '\t'))
+                    fail(service, u, lc, "Illegal configuration-file syntax");
+                if (cp == INDEX_SEPARATOR) {
+                    if (!isIndex(ln, i + 1))
+                        fail(service, u, lc, "Illegal provider index: " + ln);
+                    break;
+                }
                 if (!Character.isJavaIdentifierPart(cp) && (cp != '.'))
                     fail(service, u, lc, "Illegal provider-class name: " + ln);
             }
-            if (!providers.containsKey(ln) && !names.contains(ln))
-                names.add(ln);
         }
-        return lc + 1;
+        names.add(ln);
     }
 
-    // Parse the content of the given URL as a provider-configuration file.
+    private static boolean isIndex(String ln, int begin) {
+        if (begin == ln.length() || begin + 9 < ln.length()) {
+            return false;
+        }
+        for (int i = begin; i < ln.length(); i++) {
+            char c = ln.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the start of the content following the header written by the
+    // processor if the checksum of the header matches, -1 otherwise.
+    //
+    private static int generatedContentStart(byte[] content) {
+        int hl = GENERATED_HEADER.length;
+        if (content.length < hl + CHECKSUM_LENGTH + 1) {
+            return -1;
+        }
+        for (int i = 0; i < hl; i++) {
+            if (content[i] != GENERATED_HEADER[i]) {
+                return -1;
+            }
+        }
+        long checksum = 0;
+        for (int i = hl; i < hl + CHECKSUM_LENGTH; i++) {
+            int digit = Character.digit(content[i], 16);
+            if (digit < 0) {
+                return -1;
+            }
+            checksum = (checksum << 4) | digit;
+        }
+        int start = hl + CHECKSUM_LENGTH;
+        if (content[start] == '\r') start++;
+        if (start >= content.length || content[start] != '\n') {
+            return -1;
+        }
+        start++;
+        CRC32 crc = new CRC32();
+        crc.update(content, start, content.length - start);
+        return crc.getValue() == checksum ? start : -1;
+    }
+
+    // Parse the content of the given URL as a provider-configuration file in a
+    // single pass over its bytes.
     //
     // @param  service
     //         The service type for which providers are being sought;
@@ -118,36 +203,129 @@ public class ServiceBuilderLoader<S> implements Iterable<ServiceBuilder<S>>{
     // @param  u
     //         The URL naming the configuration file to be parsed
     //
-    // @return A (possibly empty) iterator that will yield the provider-class
-    //         names in the given configuration file that are not yet members
-    //         of the returned set
+    // @return The (possibly empty) set of provider-class names in the given
+    //         configuration file, in file order
     //
     // @throws ServiceConfigurationError
     //         If an I/O error occurs while reading from the given URL, or
     //         if a configuration-file format error is detected
     //
-    private Iterator<String> parse(Class<?> service, URL u)
+    static Set<String> parse(Class<?> service, URL u)
             throws ServiceConfigurationError
     {
-        InputStream in = null;
-        BufferedReader r = null;
-        ArrayList<String> names = new ArrayList<>();
+        byte[] content = null;
         try {
-            in = u.openStream();
-            r = new BufferedReader(new InputStreamReader(in, "utf-8"));
-            int lc = 1;
-            while ((lc = parseLine(service, u, r, lc, names)) >= 0);
+            content = read(u);
         } catch (IOException x) {
             fail(service, "Error reading configuration file", x);
+        }
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        int start = generatedContentStart(content);
+        boolean generated = start >= 0;
+        int lc = generated ? 2 : 1;
+        int begin = generated ? start : 0;
+        int n = content.length;
+        while (begin < n) {
+            int end = begin;
+            while (end < n && content[end] != '\n') end++;
+            parseLine(service, u, content, begin, end, lc++, generated, names);
+            begin = end + 1;
+        }
+        return names;
+    }
+
+    // Read the whole content of the given URL.
+    //
+    static byte[] read(URL u) throws IOException {
+        InputStream in = u.openStream();
+        try {
+            byte[] buffer = new byte[Math.max(in.available(), 1024)];
+            int length = 0;
+            int n;
+            while ((n = in.read(buffer, length, buffer.length - length)) >= 0) {
+                length += n;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+            return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
         } finally {
-            try {
-                if (r != null) r.close();
-                if (in != null) in.close();
-            } catch (IOException y) {
-                fail(service, "Error closing configuration file", y);
+            in.close();
+        }
+    }
+
+    // Returns the constructor of the named provider: the no-arg constructor of a
+    // provider class, or the int constructor of a module service factory named
+    // "factory:index". The provider class is resolved once per class loader and
+    // shared by all loaders. The constructor is not cached, a cached constructor
+    // would keep its class loader reachable. Constructors of public classes, as
+    // generated by the processor, are used without setAccessible.
+    //
+    private static Constructor<?> getConstructor(Class<?> service, ClassLoader loader, String name)
+            throws ServiceConfigurationError
+    {
+        int separator = name.indexOf(INDEX_SEPARATOR);
+        String cn = separator < 0 ? name : name.substring(0, separator);
+        Class<?> c = getProviderClass(service, loader, cn);
+        Constructor<?> constructor = null;
+        try {
+            constructor = separator < 0 ? c.getDeclaredConstructor() : c.getDeclaredConstructor(int.class);
+            if (!Modifier.isPublic(c.getModifiers()) || !Modifier.isPublic(constructor.getModifiers())) {
+                constructor.setAccessible(true);
+            }
+        } catch (Throwable x) {
+            fail(service,
+                    "Provider " + cn + " could not be instantiated",
+                    x);
+        }
+        return constructor;
+    }
+
+    private static Class<?> getProviderClass(Class<?> service, ClassLoader loader, String cn)
+            throws ServiceConfigurationError
+    {
+        ConcurrentHashMap<String, WeakReference<Class<?>>> providerClasses;
+        synchronized (sProviderClasses) {
+            providerClasses = sProviderClasses.get(loader);
+            if (providerClasses == null) {
+                providerClasses = new ConcurrentHashMap<>();
+                sProviderClasses.put(loader, providerClasses);
+            }
+        }
+        WeakReference<Class<?>> reference = providerClasses.get(cn);
+        Class<?> c = reference != null ? reference.get() : null;
+        if (c != null) {
+            return c;
+        }
+        try {
+            c = Class.forName(cn, false, loader);
+        } catch (ClassNotFoundException x) {
+            fail(service,
+                    // Android-changed: Let the ServiceConfigurationError have a cause.
+                    "Provider " + cn + " not found", x);
+            // "Provider " + cn + " not found");
+        }
+        if (!ServiceBuilder.class.isAssignableFrom(c)) {
+            // Android-changed: Let the ServiceConfigurationError have a cause.
+            ClassCastException cce = new ClassCastException(
+                    ServiceBuilder.class.getCanonicalName() + " is not assignable from " + c.getCanonicalName());
+            fail(ServiceBuilder.class,
+                    "Provider " + cn  + " not a subtype", cce);
+            // fail(service,
+            //        "Provider " + cn  + " not a subtype");
+        }
+        providerClasses.put(cn, new WeakReference<Class<?>>(c));
+        return c;
+    }
+
+    private Iterator<String> unknownNames(Collection<String> names) {
+        ArrayList<String> unknownNames = new ArrayList<>(names.size());
+        for (String name : names) {
+            if (!providers.containsKey(name)) {
+                unknownNames.add(name);
             }
         }
-        return names.iterator();
+        return unknownNames.iterator();
     }
 
     // Private inner class implementing fully-lazy provider lookup
@@ -161,6 +339,7 @@ public class ServiceBuilderLoader<S> implements Iterable<ServiceBuilder<S>>{
         ClassLoader loader;
         Enumeration<URL> configs = null;
         Iterator<String> pending = null;
+        Iterator<FutureTask<Collection<String>>> resolved = null;
         String nextName = null;
 
         private LazyIterator(Class<S> service, ClassLoader loader) {
@@ -173,53 +352,128 @@ public class ServiceBuilderLoader<S> implements Iterable<ServiceBuilder<S>>{
                 return true;
             }
             if (configs == null) {
-                try {
-                    String fullName = PREFIX + service.getName();
-                    if (loader == null)
-                        configs = ClassLoader.getSystemResources(fullName);
-                    else
-                        configs = loader.getResources(fullName);
-                } catch (IOException x) {
-                    fail(service, "Error locating configuration files", x);
+                List<String> names = ServiceBuilderIndex.get(loader, service).getServiceBuilderNames(service.getName());
+                if (names != null) {
+                    // Indexed service, configuration files are neither located nor read
+                    pending = unknownNames(names);
+                    configs = Collections.enumeration(Collections.<URL>emptyList());
+                } else {
+                    try {
+                        String fullName = PREFIX + service.getName();
+                        if (loader == null)
+                            configs = ClassLoader.getSystemResources(fullName);
+                        else
+                            configs = loader.getResources(fullName);
+                    } catch (IOException x) {
+                        fail(service, "Error locating configuration files", x);
+                    }
+                }
+                if (executor != null) {
+                    resolved = resolveEagerly(names);
                 }
             }
             while ((pending == null) || !pending.hasNext()) {
+                if (resolved != null) {
+                    if (!resolved.hasNext()) {
+                        return false;
+                    }
+                    pending = unknownNames(await(resolved.next()));
+                    continue;
+                }
                 if (!configs.hasMoreElements()) {
                     return false;
                 }
-                pending = parse(service, configs.nextElement());
+                pending = unknownNames(parseConfiguration(configs.nextElement()));
             }
             nextName = pending.next();
             return true;
         }
 
+        private Collection<String> parseConfiguration(URL url) {
+            ServiceBuilderListener listener = ServiceProviderBuilder.getListener();
+            if (listener == null) {
+                return parse(service, url);
+            }
+            long start = System.nanoTime();
+            Collection<String> names = parse(service, url);
+            listener.onConfigurationParsed(service, url, System.nanoTime() - start);
+            return names;
+        }
+
+        // Submit a task per configuration file to the executor, parsing the file and
+        // resolving its provider classes. The tasks are returned in getResources order,
+        // so providers are instantiated in the same order as the lazy lookup. Provider
+        // classes of an indexed service are resolved without waiting for them.
+        //
+        private Iterator<FutureTask<Collection<String>>> resolveEagerly(List<String> indexedNames) {
+            if (indexedNames != null) {
+                for (String name : indexedNames) {
+                    execute(Collections.singletonList(name), null);
+                }
+            }
+            List<FutureTask<Collection<String>>> tasks = new ArrayList<>();
+            while (configs.hasMoreElements()) {
+                tasks.add(execute(null, configs.nextElement()));
+            }
+            return tasks.iterator();
+        }
+
+        private FutureTask<Collection<String>> execute(final Collection<String> names, final URL url) {
+            FutureTask<Collection<String>> task = new FutureTask<>(new Callable<Collection<String>>() {
+                @Override
+                public Collection<String> call() {
+                    Collection<String> result = names != null ? names : parseConfiguration(url);
+                    for (String name : result) {
+                        try {
+                            getConstructor(service, loader, name);
+                        } catch (ServiceConfigurationError ignored) {
+                            // Thrown again when the provider is instantiated
+                        }
+                    }
+                    return result;
+                }
+            });
+            executor.execute(task);
+            return task;
+        }
+
+        private Collection<String> await(FutureTask<Collection<String>> task) {
+            try {
+                return task.get();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                fail(service, "Interrupted while reading configuration files", x);
+            } catch (ExecutionException x) {
+                if (x.getCause() instanceof ServiceConfigurationError) {
+                    throw (ServiceConfigurationError) x.getCause();
+                }
+                fail(service, "Error reading configuration file", x.getCause());
+            }
+            throw new Error();          // This cannot happen
+        }
+
         private ServiceBuilder<S> nextServiceBuilder() {
             if (!hasNextServiceBuilder())
                 throw new NoSuchElementException();
             String cn = nextName;
             nextName = null;
-            Class<?> c = null;
-            try {
-                c = Class.forName(cn, false, loader);
-            } catch (ClassNotFoundException x) {
-                fail(service,
-                        // Android-changed: Let the ServiceConfigurationError have a cause.
-                        "Provider " + cn + " not found", x);
-                // "Provider " + cn + " not found");
-            }
-            if (!serviceBuilder.isAssignableFrom(c)) {
-                // Android-changed: Let the ServiceConfigurationError have a cause.
-                ClassCastException cce = new ClassCastException(
-                        serviceBuilder.getCanonicalName() + " is not assignable from " + c.getCanonicalName());
-                fail(serviceBuilder,
-                        "Provider " + cn  + " not a subtype", cce);
-                // fail(service,
-                //        "Provider " + cn  + " not a subtype");
-            }
+            ServiceBuilderListener listener = ServiceProviderBuilder.getListener();
+            long start = listener != null ? System.nanoTime() : 0;
+            Constructor<?> constructor = getConstructor(service, loader, cn);
+            long loaded = listener != null ? System.nanoTime() : 0;
             try {
-                ServiceBuilder<S>  p = serviceBuilder.cast(c.newInstance());
+                int separator = cn.indexOf(INDEX_SEPARATOR);
+                ServiceBuilder<S>  p = serviceBuilder.cast(separator < 0 ? constructor.newInstance()
+                        : constructor.newInstance(Integer.parseInt(cn.substring(separator + 1))));
                 providers.put(cn, p);
+                if (listener != null) {
+                    listener.onBuilderInstantiated(service, cn, loaded - start, System.nanoTime() - loaded);
+                }
                 return p;
+            } catch (InvocationTargetException x) {
+                fail(service,
+                        "Provider " + cn + " could not be instantiated",
+                        x.getCause());
             } catch (Throwable x) {
                 fail(service,
                         "Provider " + cn + " could not be instantiated",
@@ -344,7 +598,49 @@ public class ServiceBuilderLoader<S> implements Iterable<ServiceBuilder<S>>{
     public static <S> ServiceBuilderLoader<S> load(Class<S> service,
                                             ClassLoader loader)
     {
-        return new ServiceBuilderLoader<>(service, loader);
+        return new ServiceBuilderLoader<>(service, loader, null);
+    }
+
+    /**
+     * Creates a new service loader for the given service type and class
+     * loader, in eager mode.
+     *
+     * <p> An eager loader parses the provider-configuration files of the
+     * service and resolves the provider classes in parallel on the given
+     * executor, one task per configuration file, as soon as its iterator is
+     * first used. Providers are still instantiated on the iterating thread in
+     * the order of {@link java.lang.ClassLoader#getResources(java.lang.String)
+     * ClassLoader.getResources(String)}, and errors are thrown at the same
+     * point of the iteration as by a lazy loader.
+     *
+     * <p> The iterating thread waits for the tasks of the executor, so the
+     * executor must not be restricted to that thread.
+     *
+     * @param  <S> the class of the service type
+     *
+     * @param  service
+     *         The interface or abstract class representing the service
+     *
+     * @param  loader
+     *         The class loader to be used to load provider-configuration files
+     *         and provider classes, or <tt>null</tt> if the system class
+     *         loader (or, failing that, the bootstrap class loader) is to be
+     *         used
+     *
+     * @param  executor
+     *         The executor parsing configuration files and resolving provider
+     *         classes, for example a {@link java.util.concurrent.ForkJoinPool}
+     *
+     * @return A new service loader
+     */
+    public static <S> ServiceBuilderLoader<S> load(Class<S> service,
+                                            ClassLoader loader,
+                                            Executor executor)
+    {
+        if (executor == null) {
+            throw new NullPointerException("executor is null");
+        }
+        return new ServiceBuilderLoader<>(service, loader, executor);
     }
 
     /**
@@ -0,0 +1,200 @@
+package com.tablebird.serviceproviderbuilder;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low overhead {@link ServiceBuilderListener} aggregating counters and latency histograms per service.
+ * <pre><code>
+ *     ServiceBuilderMetrics metrics = new ServiceBuilderMetrics();
+ *     ServiceProviderBuilder.setListener(metrics);
+ *     ...
+ *     Log.d(TAG, metrics.toString());
+ * </code></pre>
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public class ServiceBuilderMetrics implements ServiceBuilderListener {
+
+    private final ConcurrentHashMap<Class<?>, ServiceMetrics> mServiceMetricsMap = new ConcurrentHashMap<>();
+
+    @Override
+    public void onCacheHit(@NonNull Class<?> service) {
+        getServiceMetrics(service).mCacheHits.incrementAndGet();
+    }
+
+    @Override
+    public void onCacheMiss(@NonNull Class<?> service) {
+        getServiceMetrics(service).mCacheMisses.incrementAndGet();
+    }
+
+    @Override
+    public void onRegistryHit(@NonNull Class<?> service) {
+        getServiceMetrics(service).mRegistryHits.incrementAndGet();
+    }
+
+    @Override
+    public void onLoaderFallback(@NonNull Class<?> service) {
+        getServiceMetrics(service).mLoaderFallbacks.incrementAndGet();
+    }
+
+    @Override
+    public void onConfigurationParsed(@NonNull Class<?> service, @NonNull URL url, long durationNanos) {
+        getServiceMetrics(service).mConfigurationParse.record(durationNanos);
+    }
+
+    @Override
+    public void onBuilderInstantiated(@NonNull Class<?> service, @NonNull String builderName, long loadNanos, long instantiationNanos) {
+        ServiceMetrics serviceMetrics = getServiceMetrics(service);
+        serviceMetrics.mBuilderLoad.record(loadNanos);
+        serviceMetrics.mBuilderInstantiation.record(instantiationNanos);
+    }
+
+    @Override
+    public void onServiceBuilt(@NonNull Class<?> service, @NonNull ServiceBuilder<?> serviceBuilder, long durationNanos) {
+        getServiceMetrics(service).mBuild.record(durationNanos);
+    }
+
+    /**
+     * Clear all counters and histograms
+     */
+    public void reset() {
+        mServiceMetricsMap.clear();
+    }
+
+    /**
+     * Dump counters and histograms of all services, one service per block
+     *
+     * @param appendable output
+     * @throws IOException if appendable throws
+     */
+    public void dump(@NonNull Appendable appendable) throws IOException {
+        List<ServiceMetrics> serviceMetricsList = new ArrayList<>(mServiceMetricsMap.values());
+        Collections.sort(serviceMetricsList, new Comparator<ServiceMetrics>() {
+            @Override
+            public int compare(ServiceMetrics o1, ServiceMetrics o2) {
+                return o1.mService.getName().compareTo(o2.mService.getName());
+            }
+        });
+        for (ServiceMetrics serviceMetrics : serviceMetricsList) {
+            serviceMetrics.dump(appendable);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            dump(builder);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    private ServiceMetrics getServiceMetrics(@NonNull Class<?> service) {
+        ServiceMetrics serviceMetrics = mServiceMetricsMap.get(service);
+        if (serviceMetrics == null) {
+            ServiceMetrics newServiceMetrics = new ServiceMetrics(service);
+            serviceMetrics = mServiceMetricsMap.putIfAbsent(service, newServiceMetrics);
+            if (serviceMetrics == null) {
+                serviceMetrics = newServiceMetrics;
+            }
+        }
+        return serviceMetrics;
+    }
+
+    private static final class ServiceMetrics {
+        private final Class<?> mService;
+        private final AtomicLong mCacheHits = new AtomicLong();
+        private final AtomicLong mCacheMisses = new AtomicLong();
+        private final AtomicLong mRegistryHits = new AtomicLong();
+        private final AtomicLong mLoaderFallbacks = new AtomicLong();
+        private final Histogram mConfigurationParse = new Histogram();
+        private final Histogram mBuilderLoad = new Histogram();
+        private final Histogram mBuilderInstantiation = new Histogram();
+        private final Histogram mBuild = new Histogram();
+
+        private ServiceMetrics(Class<?> service) {
+            mService = service;
+        }
+
+        private void dump(Appendable appendable) throws IOException {
+            appendable.append(mService.getName())
+                    .append(": cacheHits=").append(String.valueOf(mCacheHits.get()))
+                    .append(", cacheMisses=").append(String.valueOf(mCacheMisses.get()))
+                    .append(", registryHits=").append(String.valueOf(mRegistryHits.get()))
+                    .append(", loaderFallbacks=").append(String.valueOf(mLoaderFallbacks.get()))
+                    .append('\n');
+            mConfigurationParse.dump("configurationParse", appendable);
+            mBuilderLoad.dump("builderLoad", appendable);
+            mBuilderInstantiation.dump("builderInstantiation", appendable);
+            mBuild.dump("build", appendable);
+        }
+    }
+
+    /**
+     * Latency histogram with power of two nanosecond buckets, bucket i counts latency in [2^(i-1), 2^i),
+     * bucket 0 counts zero latency
+     */
+    private static final class Histogram {
+        private static final int BUCKET_COUNT = 64;
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            mBuckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(nanos));
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = mMaxNanos.get())) {
+                if (mMaxNanos.compareAndSet(max, nanos)) {
+                    break;
+                }
+            }
+        }
+
+        private long percentile(long count, double percentile) {
+            long threshold = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= threshold) {
+                    return i == 0 ? 0 : 1L << Math.min(i, 62);
+                }
+            }
+            return mMaxNanos.get();
+        }
+
+        private void dump(String name, Appendable appendable) throws IOException {
+            long count = mCount.get();
+            if (count == 0) {
+                return;
+            }
+            appendable.append("    ").append(name)
+                    .append(": count=").append(String.valueOf(count))
+                    .append(", meanNs=").append(String.valueOf(mTotalNanos.get() / count))
+                    .append(", p50Ns<=").append(String.valueOf(percentile(count, 0.5)))
+                    .append(", p90Ns<=").append(String.valueOf(percentile(count, 0.9)))
+                    .append(", p99Ns<=").append(String.valueOf(percentile(count, 0.99)))
+                    .append(", maxNs=").append(String.valueOf(mMaxNanos.get()))
+                    .append('\n');
+        }
+    }
+}
@@ -1,28 +1,88 @@
 package com.tablebird.serviceproviderbuilder;
 
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Service builders registered by the gradle plugin. The plugin generates index classes
+ * {@code ServiceBuilderRegistry_IndexN} indexing every service provider interface by name, and the
+ * {@link Loader} {@code ServiceBuilderRegistry_Loader} dispatching to them, found by name from the static
+ * initializer. Only the builders of the interface looked up are loaded and instantiated, on its first lookup.
+ *
  * @author tablebird
  * @date 2019/11/11
  */
 public final class ServiceBuilderRegistry {
 
-    private static final Map<Class<?>, Set<ServiceBuilder>> sServices = new LinkedHashMap<Class<?>, Set<ServiceBuilder>>();
+    private static final Map<Class<?>, Set<ServiceBuilder<?>>> sServices = new ConcurrentHashMap<Class<?>, Set<ServiceBuilder<?>>>();
 
-    public static Set<ServiceBuilder> get(Class<?> key) {
-        return sServices.get(key);
+    // Interface name to the id passed to load, filled by the index classes generated by the plugin
+    private static final Map<String, Integer> sServiceIds = new HashMap<String, Integer>();
+
+    private static final String LOADER_CLASS_NAME = ServiceBuilderRegistry.class.getName() + "_Loader";
+
+    private static final Loader sLoader = createLoader();
+
+    /**
+     * Implemented by the loader generated by the gradle plugin
+     */
+    interface Loader {
+
+        /**
+         * Index every service provider interface by {@link ServiceBuilderRegistry#index(String, int)}
+         */
+        void index();
+
+        /**
+         * Add the builders of the interface with the id to result
+         */
+        void load(int id, Set<ServiceBuilder<?>> result);
+    }
+
+    private static Loader createLoader() {
+        Loader loader;
+        try {
+            loader = (Loader) Class.forName(LOADER_CLASS_NAME).newInstance();
+        } catch (ClassNotFoundException e) {
+            // The gradle plugin is not applied
+            return null;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Unable to instantiate " + LOADER_CLASS_NAME, e);
+        }
+        loader.index();
+        return loader;
+    }
+
+    public static Set<ServiceBuilder<?>> get(Class<?> key) {
+        Set<ServiceBuilder<?>> result = sServices.get(key);
+        if (result != null) {
+            return result;
+        }
+        Integer id = sServiceIds.get(key.getName());
+        if (id == null) {
+            return null;
+        }
+        synchronized (ServiceBuilderRegistry.class) {
+            result = sServices.get(key);
+            if (result == null) {
+                result = new LinkedHashSet<ServiceBuilder<?>>();
+                load(id, result);
+                sServices.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    static void index(String key, int id) {
+        sServiceIds.put(key, id);
     }
 
-    private static void register(Class<?> key, ServiceBuilder<?> value) {
-        Set<ServiceBuilder> result = sServices.get(key);
-        if (result == null) {
-            result = new LinkedHashSet<ServiceBuilder>();
-            sServices.put(key, result);
+    private static void load(int id, Set<ServiceBuilder<?>> result) {
+        if (sLoader != null) {
+            sLoader.load(id, result);
         }
-        result.add(value);
     }
 }
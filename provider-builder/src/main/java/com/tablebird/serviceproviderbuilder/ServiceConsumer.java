@@ -0,0 +1,18 @@
+package com.tablebird.serviceproviderbuilder;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Consumer of service implementations built by {@link ServiceProviderBuilder#forEachService}.
+ * Declared here since {@code java.util.function} is not available on every supported android version.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public interface ServiceConsumer<S> {
+
+    /**
+     * @param service built service implementation
+     */
+    void accept(@NonNull S service);
+}
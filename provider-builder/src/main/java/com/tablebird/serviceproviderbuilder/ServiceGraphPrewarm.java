@@ -0,0 +1,108 @@
+package com.tablebird.serviceproviderbuilder;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prewarm of service providers and their {@link AbstractServiceBuilder#getDependencies() dependencies}
+ * building instances. A service is prewarmed once all of its dependencies are, so independent subtrees
+ * of the dependency graph run in parallel on the executor. Services of a dependency cycle, and their
+ * dependents, never have all dependencies prewarmed and are left to their build, which reports the cycle.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+final class ServiceGraphPrewarm implements Runnable {
+
+    private final Executor mExecutor;
+    private final Class<?>[] mServices;
+    private final ClassLoader mClassLoader;
+
+    private final Map<Class<?>, Node> mNodes = new HashMap<>();
+
+    ServiceGraphPrewarm(@NonNull Executor executor, @NonNull Class<?>[] services, ClassLoader classLoader) {
+        mExecutor = executor;
+        mServices = services;
+        mClassLoader = classLoader;
+    }
+
+    @Override
+    public void run() {
+        for (Class<?> service : mServices) {
+            visit(service);
+        }
+        List<Node> ready = new ArrayList<>();
+        for (Node node : mNodes.values()) {
+            node.mPending.set(node.mDependencyCount);
+            if (node.mDependencyCount == 0) {
+                ready.add(node);
+            }
+        }
+        for (Node node : ready) {
+            mExecutor.execute(node);
+        }
+    }
+
+    private Node visit(Class<?> service) {
+        Node node = mNodes.get(service);
+        if (node != null) {
+            return node;
+        }
+        node = new Node(service);
+        mNodes.put(service, node);
+        for (Class<?> dependency : getDependencies(service)) {
+            visit(dependency).mDependents.add(node);
+            node.mDependencyCount++;
+        }
+        return node;
+    }
+
+    private List<Class<?>> getDependencies(Class<?> service) {
+        List<Class<?>> dependencies = new ArrayList<>();
+        ServiceBuilder<?>[] serviceBuilders;
+        try {
+            serviceBuilders = ServiceProviderBuilder.getServiceBuilders(service, mClassLoader);
+        } catch (RuntimeException | ServiceConfigurationError ignored) {
+            // Thrown again by the build of this service
+            return dependencies;
+        }
+        for (ServiceBuilder<?> serviceBuilder : serviceBuilders) {
+            if (serviceBuilder instanceof AbstractServiceBuilder) {
+                for (Class<?> dependency : ((AbstractServiceBuilder<?>) serviceBuilder).getDependencies()) {
+                    if (!dependencies.contains(dependency)) {
+                        dependencies.add(dependency);
+                    }
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    private final class Node implements Runnable {
+        final Class<?> mService;
+        final List<Node> mDependents = new ArrayList<>();
+        final AtomicInteger mPending = new AtomicInteger();
+        int mDependencyCount;
+
+        Node(Class<?> service) {
+            mService = service;
+        }
+
+        @Override
+        public void run() {
+            ServiceProviderBuilder.prewarm(mService, true, mClassLoader);
+            for (Node dependent : mDependents) {
+                if (dependent.mPending.decrementAndGet() == 0) {
+                    mExecutor.execute(dependent);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.tablebird.serviceproviderbuilder;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Memoized handle of a service provider for hot call sites, get by {@link ServiceProviderBuilder#handle(Class)}.
+ * The builder is resolved on the first {@link #get()}, an implementation of {@link ServiceScope#SINGLETON}
+ * scope is cached by the handle, so {@link #get()} is a single field read afterwards. A service provider
+ * without implementation is not resolved again either. Safe to keep in a static final field, the handle
+ * is reset by {@link ServiceProviderBuilder#invalidate(Class)} and {@link ServiceProviderBuilder#invalidateAll()}.
+ * <pre><code>
+ *     private static final ServiceHandle&lt;IService&gt; SERVICE = ServiceProviderBuilder.handle(IService.class);
+ *
+ *     SERVICE.get().getName();
+ * </code></pre>
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public final class ServiceHandle<S> {
+
+    private final Class<S> mService;
+
+    // Cached implementation of singleton scope
+    private volatile S mInstance;
+
+    // Resolved builder of other scopes, built on every get
+    private volatile ServiceBuilder<S> mServiceBuilder;
+
+    // Service provider has no implementation, get returns null without resolving again
+    private volatile boolean mNoImplementation;
+
+    ServiceHandle(@NonNull Class<S> service) {
+        mService = service;
+    }
+
+    @NonNull
+    public Class<S> getService() {
+        return mService;
+    }
+
+    /**
+     * Build the implementation of service provider, the implementation with the highest
+     * {@link ServiceImplementation#priority() priority} for a multiple policy service provider
+     *
+     * @return service provider implementation, or null if service provider has no implementation
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @Nullable
+    public S get() {
+        S instance = mInstance;
+        if (instance != null) {
+            return instance;
+        }
+        ServiceBuilder<S> serviceBuilder = mServiceBuilder;
+        if (serviceBuilder != null) {
+            return ServiceProviderBuilder.build(mService, serviceBuilder);
+        }
+        if (mNoImplementation) {
+            return null;
+        }
+        return resolve();
+    }
+
+    private synchronized S resolve() {
+        if (mInstance != null) {
+            return mInstance;
+        }
+        if (mServiceBuilder != null) {
+            return ServiceProviderBuilder.build(mService, mServiceBuilder);
+        }
+        if (mNoImplementation) {
+            return null;
+        }
+        ServiceBuilder<S> serviceBuilder = ServiceProviderBuilder.getFirstServiceBuilder(mService);
+        if (serviceBuilder == null) {
+            mNoImplementation = true;
+            return null;
+        }
+        S instance = ServiceProviderBuilder.build(mService, serviceBuilder);
+        if (serviceBuilder instanceof AbstractServiceBuilder
+                && ((AbstractServiceBuilder<?>) serviceBuilder).getScope() == ServiceScope.SINGLETON) {
+            mInstance = instance;
+        } else {
+            mServiceBuilder = serviceBuilder;
+        }
+        return instance;
+    }
+
+    /**
+     * Drop the resolved builder, cached implementation or missing implementation, resolved again on
+     * next {@link #get()}
+     */
+    synchronized void reset() {
+        mInstance = null;
+        mServiceBuilder = null;
+        mNoImplementation = false;
+    }
+}
@@ -3,11 +3,19 @@ package com.tablebird.serviceproviderbuilder;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.ServiceConfigurationError;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * Service build for android service provider interface. Use this class to simplify build service
@@ -40,7 +48,32 @@ import java.util.Set;
  */
 public class ServiceProviderBuilder {
 
-    private static final Map<Class<?>, Set<? extends ServiceBuilder>> mServiceBuilderMap = new HashMap<>();
+    private static final ServiceBuilder<?>[] EMPTY_SERVICE_BUILDERS = new ServiceBuilder<?>[0];
+
+    private static final Iterator<Object> EMPTY_ITERATOR = getIterator(Object.class, EMPTY_SERVICE_BUILDERS);
+
+    private static final Comparator<ServiceBuilder<?>> PRIORITY_COMPARATOR = new Comparator<ServiceBuilder<?>>() {
+        @Override
+        public int compare(ServiceBuilder<?> o1, ServiceBuilder<?> o2) {
+            int priority1 = getPriority(o1);
+            int priority2 = getPriority(o2);
+            return priority1 > priority2 ? -1 : (priority1 == priority2 ? 0 : 1);
+        }
+    };
+
+    private static final ConcurrentHashMap<Class<?>, ServiceBuilderEntry> mServiceBuilderMap = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<Class<?>, ServiceHandle<?>> sServiceHandles = new ConcurrentHashMap<>();
+
+    // Services with dependencies being built by current thread
+    private static final ThreadLocal<ArrayList<Class<?>>> sBuildingServices = new ThreadLocal<ArrayList<Class<?>>>() {
+        @Override
+        protected ArrayList<Class<?>> initialValue() {
+            return new ArrayList<>();
+        }
+    };
+
+    private static volatile ServiceBuilderListener sListener;
 
     private ServiceProviderBuilder() {
         throw new AssertionError("No instances.");
@@ -72,16 +105,127 @@ public class ServiceProviderBuilder {
      */
     @Nullable
     public static <S> S buildSingleService(@NonNull Class<S> service, ClassLoader classLoader) {
-        ServiceProviderPolicy providerPolicy = getServiceProviderPolicy(service);
+        ServiceBuilderEntry entry = getServiceBuilderEntry(service);
+        ServiceProviderPolicy providerPolicy = getServiceProviderPolicy(entry);
         if (providerPolicy != ServiceProviderPolicy.SINGLE) {
             throw new IllegalArgumentException(String.format("%s not single policy", service.getSimpleName()));
         }
-        Iterator<S> sIterator = getServiceIterator(service, providerPolicy, classLoader);
-        return sIterator.hasNext() ? sIterator.next() : null;
+        ServiceBuilder<?>[] serviceBuilders = getServiceBuilders(service, entry, providerPolicy, classLoader);
+        return serviceBuilders.length > 0 ? build(service, serviceBuilders[0]) : null;
+    }
+
+    /**
+     * Build the implementation of service provider with the highest
+     * {@link ServiceImplementation#priority() priority}
+     *
+     * @param service service provider class
+     * @param <S>     service provider
+     * @return service provider implementation, or null if service provider has no implementation
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @Nullable
+    public static <S> S buildHighestPriorityService(@NonNull Class<S> service) {
+        return buildHighestPriorityService(service, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Build the implementation of service provider with the highest
+     * {@link ServiceImplementation#priority() priority}
+     *
+     * @param service     service provider class
+     * @param <S>         service provider
+     * @param classLoader The class loader to be used to load providerBuilder-configuration files and provider classes
+     * @return service provider implementation, or null if service provider has no implementation
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @Nullable
+    public static <S> S buildHighestPriorityService(@NonNull Class<S> service, ClassLoader classLoader) {
+        ServiceBuilder<?>[] serviceBuilders = getServiceBuilders(service, classLoader);
+        return serviceBuilders.length > 0 ? build(service, serviceBuilders[0]) : null;
+    }
+
+    /**
+     * Build a lazy proxy of the service provider, the implementation is built on the first method call
+     * of the proxy. Builds the implementation with the highest {@link ServiceImplementation#priority() priority}
+     * for a multiple policy service provider. Service provider without generated proxy, not an interface
+     * or not compiled by the processor, is built immediately.
+     *
+     * @param service service provider class
+     * @param <S>     service provider
+     * @return lazy service provider implementation, or null if service provider has no implementation
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @Nullable
+    public static <S> S buildLazyService(@NonNull Class<S> service) {
+        return buildLazyService(service, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Build a lazy proxy of the service provider, the implementation is built on the first method call
+     * of the proxy. Builds the implementation with the highest {@link ServiceImplementation#priority() priority}
+     * for a multiple policy service provider. Service provider without generated proxy, not an interface
+     * or not compiled by the processor, is built immediately.
+     *
+     * @param service     service provider class
+     * @param <S>         service provider
+     * @param classLoader The class loader to be used to load providerBuilder-configuration files and provider classes
+     * @return lazy service provider implementation, or null if service provider has no implementation
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @Nullable
+    public static <S> S buildLazyService(@NonNull final Class<S> service, ClassLoader classLoader) {
+        ServiceBuilderEntry entry = getServiceBuilderEntry(service);
+        ServiceBuilder<?>[] serviceBuilders = getServiceBuilders(service, entry, getServiceProviderPolicy(entry), classLoader);
+        if (serviceBuilders.length == 0) {
+            return null;
+        }
+        final ServiceBuilder<?> serviceBuilder = serviceBuilders[0];
+        S lazyService = ((ServiceProviderMetadata<S>) entry.getMetadata()).newLazyService(new ServiceBuilder<S>() {
+            @NonNull
+            @Override
+            public S build() {
+                return ServiceProviderBuilder.build(service, serviceBuilder);
+            }
+        });
+        return lazyService != null ? lazyService : build(service, serviceBuilder);
+    }
+
+    /**
+     * Build the implementation of service provider with the {@link ServiceImplementation#name() name},
+     * other implementations are not built
+     *
+     * @param service service provider class
+     * @param name    name of the implementation
+     * @param <S>     service provider
+     * @return service provider implementation, or null if no implementation has the name
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @Nullable
+    public static <S> S buildService(@NonNull Class<S> service, @NonNull String name) {
+        return buildService(service, name, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Build the implementation of service provider with the {@link ServiceImplementation#name() name},
+     * other implementations are not built
+     *
+     * @param service     service provider class
+     * @param name        name of the implementation
+     * @param <S>         service provider
+     * @param classLoader The class loader to be used to load providerBuilder-configuration files and provider classes
+     * @return service provider implementation, or null if no implementation has the name
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @Nullable
+    public static <S> S buildService(@NonNull Class<S> service, @NonNull String name, ClassLoader classLoader) {
+        ServiceBuilderEntry entry = getServiceBuilderEntry(service);
+        getServiceBuilders(service, entry, getServiceProviderPolicy(entry), classLoader);
+        ServiceBuilder<?> serviceBuilder = entry.getServiceBuilder(name);
+        return serviceBuilder != null ? build(service, serviceBuilder) : null;
     }
 
     /**
-     * Build implementation of service provider
+     * Build implementation of service provider, in order of {@link ServiceImplementation#priority() priority}
      *
      * @param service service provider class
      * @param <S>     service provider
@@ -94,7 +238,7 @@ public class ServiceProviderBuilder {
     }
 
     /**
-     * Build implementation of service provider
+     * Build implementation of service provider, in order of {@link ServiceImplementation#priority() priority}
      *
      * @param service     service provider class
      * @param <S>         service provider
@@ -104,57 +248,430 @@ public class ServiceProviderBuilder {
      */
     @NonNull
     public static <S> Iterator<S> buildServiceSet(@NonNull Class<S> service, ClassLoader classLoader) {
-        ServiceProviderPolicy providerPolicy = getServiceProviderPolicy(service);
-        return getServiceIterator(service, providerPolicy, classLoader);
+        ServiceBuilder<?>[] serviceBuilders = getServiceBuilders(service, classLoader);
+        if (serviceBuilders.length == 0) {
+            return (Iterator<S>) EMPTY_ITERATOR;
+        }
+        return getIterator(service, serviceBuilders);
+    }
+
+    /**
+     * Build all implementations of service provider, in order of {@link ServiceImplementation#priority() priority}
+     *
+     * @param service service provider class
+     * @param <S>     service provider
+     * @return unmodifiable list of service provider implementation
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @NonNull
+    public static <S> List<S> buildServiceList(@NonNull Class<S> service) {
+        return buildServiceList(service, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Build all implementations of service provider, in order of {@link ServiceImplementation#priority() priority}
+     *
+     * @param service     service provider class
+     * @param <S>         service provider
+     * @param classLoader The class loader to be used to load providerBuilder-configuration files and provider classes
+     * @return unmodifiable list of service provider implementation
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @NonNull
+    public static <S> List<S> buildServiceList(@NonNull Class<S> service, ClassLoader classLoader) {
+        ServiceBuilder<?>[] serviceBuilders = getServiceBuilders(service, classLoader);
+        if (serviceBuilders.length == 0) {
+            return Collections.emptyList();
+        }
+        if (serviceBuilders.length == 1) {
+            return Collections.singletonList(build(service, serviceBuilders[0]));
+        }
+        return Collections.unmodifiableList(Arrays.asList(buildArray(service, serviceBuilders)));
+    }
+
+    /**
+     * Build all implementations of service provider, in order of {@link ServiceImplementation#priority() priority}
+     *
+     * @param service service provider class
+     * @param <S>     service provider
+     * @return new array of service provider implementation
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @NonNull
+    public static <S> S[] buildServiceArray(@NonNull Class<S> service) {
+        return buildServiceArray(service, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Build all implementations of service provider, in order of {@link ServiceImplementation#priority() priority}
+     *
+     * @param service     service provider class
+     * @param <S>         service provider
+     * @param classLoader The class loader to be used to load providerBuilder-configuration files and provider classes
+     * @return new array of service provider implementation
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    @NonNull
+    public static <S> S[] buildServiceArray(@NonNull Class<S> service, ClassLoader classLoader) {
+        return buildArray(service, getServiceBuilders(service, classLoader));
+    }
+
+    /**
+     * Build implementations of service provider one by one, in order of {@link ServiceImplementation#priority() priority},
+     * without allocating an iterator or a collection
+     *
+     * @param service  service provider class
+     * @param consumer consumer of every built implementation
+     * @param <S>      service provider
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    public static <S> void forEachService(@NonNull Class<S> service, @NonNull ServiceConsumer<? super S> consumer) {
+        forEachService(service, Thread.currentThread().getContextClassLoader(), consumer);
     }
 
+    /**
+     * Build implementations of service provider one by one, in order of {@link ServiceImplementation#priority() priority},
+     * without allocating an iterator or a collection
+     *
+     * @param service     service provider class
+     * @param classLoader The class loader to be used to load providerBuilder-configuration files and provider classes
+     * @param consumer    consumer of every built implementation
+     * @param <S>         service provider
+     * @throws BuilderInstantiationException service provider policy is single, but service implementation not single
+     */
+    public static <S> void forEachService(@NonNull Class<S> service, ClassLoader classLoader, @NonNull ServiceConsumer<? super S> consumer) {
+        for (ServiceBuilder<?> serviceBuilder : getServiceBuilders(service, classLoader)) {
+            consumer.accept(build(service, serviceBuilder));
+        }
+    }
+
+    /**
+     * Build the implementation of service provider required by another service, with the context class
+     * loader. Builds the implementation with the highest {@link ServiceImplementation#priority() priority}
+     * for a multiple policy service provider.
+     *
+     * @param service service provider class
+     * @param <S>     service provider
+     * @return service provider implementation
+     * @throws BuilderInstantiationException service provider has no implementation, or a dependency cycle
+     * @see #requireService(Class, ClassLoader)
+     */
     @NonNull
-    private static <S> Iterator<S> getServiceIterator(@NonNull Class<S> service,
-                                                      ServiceProviderPolicy providerPolicy,
-                                                      ClassLoader classLoader) {
-        if (mServiceBuilderMap.containsKey(service)) {
-            Set<? extends ServiceBuilder> serviceBuilders = mServiceBuilderMap.get(service);
-            if (serviceBuilders == null || serviceBuilders.isEmpty()) {
-                mServiceBuilderMap.remove(service);
-            } else {
-                return getIterator(service, serviceBuilders);
+    public static <S> S requireService(@NonNull Class<S> service) {
+        return requireService(service, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Build the implementation of service provider required by another service, used by generated
+     * builders to inject constructor and {@link BuildService} parameters with the class loader of the
+     * implementation requiring it. Builds the implementation with the highest
+     * {@link ServiceImplementation#priority() priority} for a multiple policy service provider.
+     *
+     * @param service     service provider class
+     * @param <S>         service provider
+     * @param classLoader The class loader to be used to load providerBuilder-configuration files and provider classes
+     * @return service provider implementation
+     * @throws BuilderInstantiationException service provider has no implementation, or a dependency cycle
+     */
+    @NonNull
+    public static <S> S requireService(@NonNull Class<S> service, ClassLoader classLoader) {
+        ServiceBuilder<S> serviceBuilder = getFirstServiceBuilder(service, classLoader);
+        if (serviceBuilder == null) {
+            throw new BuilderInstantiationException(String.format("%s has no service achieve", service.getSimpleName()));
+        }
+        return build(service, serviceBuilder);
+    }
+
+    /**
+     * Get the memoized handle of service provider, one handle per service provider. The handle resolves
+     * the builder once and caches the implementation of {@link ServiceScope#SINGLETON} scope, for call
+     * sites building the service repeatedly.
+     *
+     * @param service service provider class
+     * @param <S>     service provider
+     * @return handle of service provider
+     * @see ServiceHandle
+     */
+    @NonNull
+    public static <S> ServiceHandle<S> handle(@NonNull Class<S> service) {
+        ServiceHandle<S> serviceHandle = (ServiceHandle<S>) sServiceHandles.get(service);
+        if (serviceHandle == null) {
+            ServiceHandle<S> newServiceHandle = new ServiceHandle<>(service);
+            serviceHandle = (ServiceHandle<S>) sServiceHandles.putIfAbsent(service, newServiceHandle);
+            if (serviceHandle == null) {
+                serviceHandle = newServiceHandle;
+            }
+        }
+        return serviceHandle;
+    }
+
+    /**
+     * Prewarm service providers in background, resolve their builders and initialize the classes of
+     * service implementations, so the first build on main thread not pay for class loading.
+     *
+     * @param executor executor to run the prewarm
+     * @param services service provider classes
+     * @see #prewarm(Executor, boolean, Class[])
+     */
+    public static void prewarm(@NonNull Executor executor, @NonNull Class<?>... services) {
+        prewarm(executor, false, services);
+    }
+
+    /**
+     * Prewarm service providers in background, resolve their builders and initialize the classes of
+     * service implementations, so the first build on main thread not pay for class loading.
+     * A build arriving while its service is prewarming waits for the prewarm instead of repeating it.
+     * <p>
+     * Building instances also prewarms the {@link AbstractServiceBuilder#getDependencies() dependencies}
+     * of the services, a service is prewarmed after its dependencies and independent services in parallel.
+     * </p>
+     *
+     * @param executor       executor to run the prewarm
+     * @param buildInstances also build the instances of {@link ServiceScope#SINGLETON} service implementations
+     * @param services       service provider classes
+     */
+    public static void prewarm(@NonNull Executor executor, final boolean buildInstances, @NonNull Class<?>... services) {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (buildInstances) {
+            executor.execute(new ServiceGraphPrewarm(executor, services, classLoader));
+            return;
+        }
+        for (final Class<?> service : services) {
+            final ServiceBuilderEntry entry = getServiceBuilderEntry(service);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    prewarm(service, entry, buildInstances, classLoader);
+                }
+            });
+        }
+    }
+
+    static void prewarm(@NonNull Class<?> service, boolean buildInstances, ClassLoader classLoader) {
+        ServiceBuilderEntry entry;
+        try {
+            entry = getServiceBuilderEntry(service);
+        } catch (RuntimeException ignored) {
+            return;
+        }
+        prewarm(service, entry, buildInstances, classLoader);
+    }
+
+    private static void prewarm(@NonNull Class<?> service, @NonNull ServiceBuilderEntry entry, boolean buildInstances, ClassLoader classLoader) {
+        ServiceBuilder<?>[] serviceBuilders;
+        try {
+            serviceBuilders = getServiceBuilders(service, entry, getServiceProviderPolicy(entry), classLoader);
+        } catch (RuntimeException | ServiceConfigurationError ignored) {
+            // Thrown again by the build of this service
+            return;
+        }
+        for (ServiceBuilder<?> serviceBuilder : serviceBuilders) {
+            if (!(serviceBuilder instanceof AbstractServiceBuilder)) {
+                continue;
+            }
+            AbstractServiceBuilder<?> abstractServiceBuilder = (AbstractServiceBuilder<?>) serviceBuilder;
+            Class<?> implementationClass = abstractServiceBuilder.getImplementationClass();
+            try {
+                if (implementationClass != null) {
+                    Class.forName(implementationClass.getName(), true, implementationClass.getClassLoader());
+                }
+                if (buildInstances && abstractServiceBuilder.getScope() == ServiceScope.SINGLETON) {
+                    // Notifies the listener and guards against dependency cycles like any build
+                    build(service, serviceBuilder);
+                }
+            } catch (ClassNotFoundException ignored) {
+            } catch (RuntimeException | LinkageError ignored) {
+                // Thrown again by the build of this service
             }
         }
-        Set<ServiceBuilder> serviceBuilders = ServiceBuilderRegistry.get(service);
+    }
+
+    /**
+     * Install listener of service lookups and builds, for example {@link ServiceBuilderMetrics}.
+     * No listener installed by default.
+     *
+     * @param listener listener to install, or null to uninstall
+     */
+    public static void setListener(@Nullable ServiceBuilderListener listener) {
+        sListener = listener;
+    }
+
+    @Nullable
+    static ServiceBuilderListener getListener() {
+        return sListener;
+    }
+
+    /**
+     * Drop the cached builders of service provider, include the cached result of no implementation,
+     * of {@link ServiceConfigurationError} and of a single policy violation. Next build will look up the
+     * implementations again.
+     *
+     * @param service service provider class
+     */
+    public static void invalidate(@NonNull Class<?> service) {
+        mServiceBuilderMap.remove(service);
+        ServiceHandle<?> serviceHandle = sServiceHandles.get(service);
+        if (serviceHandle != null) {
+            serviceHandle.reset();
+        }
+    }
+
+    /**
+     * Drop the cached builders of all service providers.
+     *
+     * @see #invalidate(Class)
+     */
+    public static void invalidateAll() {
+        mServiceBuilderMap.clear();
+        for (ServiceHandle<?> serviceHandle : sServiceHandles.values()) {
+            serviceHandle.reset();
+        }
+    }
+
+    @Nullable
+    static <S> ServiceBuilder<S> getFirstServiceBuilder(@NonNull Class<S> service) {
+        return getFirstServiceBuilder(service, Thread.currentThread().getContextClassLoader());
+    }
+
+    @Nullable
+    private static <S> ServiceBuilder<S> getFirstServiceBuilder(@NonNull Class<S> service, ClassLoader classLoader) {
+        ServiceBuilder<?>[] serviceBuilders = getServiceBuilders(service, classLoader);
+        return serviceBuilders.length > 0 ? (ServiceBuilder<S>) serviceBuilders[0] : null;
+    }
+
+    @NonNull
+    static ServiceBuilder<?>[] getServiceBuilders(@NonNull Class<?> service, ClassLoader classLoader) {
+        ServiceBuilderEntry entry = getServiceBuilderEntry(service);
+        return getServiceBuilders(service, entry, getServiceProviderPolicy(entry), classLoader);
+    }
+
+    @NonNull
+    private static <S> ServiceBuilder<?>[] getServiceBuilders(@NonNull Class<S> service,
+                                                           @NonNull ServiceBuilderEntry entry,
+                                                           ServiceProviderPolicy providerPolicy,
+                                                           ClassLoader classLoader) {
+        ServiceBuilderListener listener = sListener;
+        ServiceBuilder<?>[] serviceBuilders = entry.getServiceBuilders();
+        if (serviceBuilders != null) {
+            if (listener != null) {
+                listener.onCacheHit(service);
+            }
+            return serviceBuilders;
+        }
+        checkResolutionError(entry, listener);
+        synchronized (entry) {
+            serviceBuilders = entry.getServiceBuilders();
+            if (serviceBuilders != null) {
+                if (listener != null) {
+                    listener.onCacheHit(service);
+                }
+                return serviceBuilders;
+            }
+            checkResolutionError(entry, listener);
+            if (listener != null) {
+                listener.onCacheMiss(service);
+            }
+            try {
+                serviceBuilders = resolveServiceBuilders(service, providerPolicy, classLoader);
+                entry.setServiceBuilders(serviceBuilders);
+            } catch (ServiceConfigurationError e) {
+                entry.setServiceConfigurationError(e);
+                throw e;
+            } catch (BuilderInstantiationException e) {
+                entry.setProviderPolicyException(e);
+                throw e;
+            }
+            return serviceBuilders;
+        }
+    }
+
+    private static void checkResolutionError(@NonNull ServiceBuilderEntry entry, @Nullable ServiceBuilderListener listener) {
+        ServiceConfigurationError error = entry.getServiceConfigurationError();
+        BuilderInstantiationException exception = entry.getProviderPolicyException();
+        if (error == null && exception == null) {
+            return;
+        }
+        if (listener != null) {
+            listener.onCacheHit(entry.getService());
+        }
+        if (error != null) {
+            throw new ServiceConfigurationError(error.getMessage(), error);
+        }
+        throw new BuilderInstantiationException(exception.getMessage());
+    }
+
+    @NonNull
+    private static ServiceBuilderEntry getServiceBuilderEntry(Class<?> service) {
+        if (service == null) {
+            throw new NullPointerException("service is null");
+        }
+        ServiceBuilderEntry entry = mServiceBuilderMap.get(service);
+        if (entry == null) {
+            ServiceBuilderEntry newEntry = new ServiceBuilderEntry(service);
+            entry = mServiceBuilderMap.putIfAbsent(service, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+        return entry;
+    }
+
+    @NonNull
+    private static <S> ServiceBuilder<?>[] resolveServiceBuilders(@NonNull Class<S> service,
+                                                               ServiceProviderPolicy providerPolicy,
+                                                               ClassLoader classLoader) {
+        ServiceBuilderListener listener = sListener;
+        Set<ServiceBuilder<?>> serviceBuilders = ServiceBuilderRegistry.get(service);
 
         if (serviceBuilders == null) {
+            if (listener != null) {
+                listener.onLoaderFallback(service);
+            }
             serviceBuilders = loadServiceBuilders(service, classLoader);
+        } else if (listener != null) {
+            listener.onRegistryHit(service);
         }
 
         checkProviderPolicy(service, providerPolicy, serviceBuilders);
 
-        if (!serviceBuilders.isEmpty()) {
-            mServiceBuilderMap.put(service, serviceBuilders);
+        if (serviceBuilders.isEmpty()) {
+            return EMPTY_SERVICE_BUILDERS;
         }
-        return getIterator(service, serviceBuilders);
+        ServiceBuilder<?>[] result = serviceBuilders.toArray(new ServiceBuilder<?>[serviceBuilders.size()]);
+        // Stable, builders of same priority keep their discovery order
+        Arrays.sort(result, PRIORITY_COMPARATOR);
+        return result;
+    }
+
+    private static int getPriority(@NonNull ServiceBuilder<?> serviceBuilder) {
+        return serviceBuilder instanceof AbstractServiceBuilder ? ((AbstractServiceBuilder<?>) serviceBuilder).getPriority() : 0;
     }
 
-    private static <S> void checkProviderPolicy(@NonNull Class<S> service, ServiceProviderPolicy providerPolicy, Set<ServiceBuilder> serviceBuilders) {
+    private static <S> void checkProviderPolicy(@NonNull Class<S> service, ServiceProviderPolicy providerPolicy, Set<ServiceBuilder<?>> serviceBuilders) {
         if (providerPolicy == ServiceProviderPolicy.SINGLE && serviceBuilders.size() > 1) {
             StringBuilder serviceAchieveNames = new StringBuilder("[");
-            for (ServiceBuilder serviceBuilder : serviceBuilders) {
+            for (ServiceBuilder<?> serviceBuilder : serviceBuilders) {
+                Class<?> implementationClass = serviceBuilder instanceof AbstractServiceBuilder
+                        ? ((AbstractServiceBuilder<?>) serviceBuilder).getImplementationClass() : null;
                 String builderName = serviceBuilder.getClass().getSimpleName();
-                serviceAchieveNames.append(builderName.substring(0, builderName.lastIndexOf("_"))).append(", ");
+                int suffixIndex = builderName.lastIndexOf("_");
+                serviceAchieveNames.append(implementationClass != null ? implementationClass.getSimpleName()
+                        : suffixIndex > 0 ? builderName.substring(0, suffixIndex) : builderName).append(", ");
             }
             serviceAchieveNames.replace(serviceAchieveNames.length() - 2, serviceAchieveNames.length(), "]");
             throw new BuilderInstantiationException(String.format("%s policy is single, but service achieve not single : %s ", service.getSimpleName(), serviceAchieveNames.toString()));
         }
     }
 
-    private static <S> Set<ServiceBuilder> loadServiceBuilders(@NonNull Class<S> service, ClassLoader classLoader) {
-        Set<ServiceBuilder> serviceBuilders;
+    private static <S> Set<ServiceBuilder<?>> loadServiceBuilders(@NonNull Class<S> service, ClassLoader classLoader) {
+        Set<ServiceBuilder<?>> serviceBuilders;
         if (classLoader == null) {
             classLoader = service.getClassLoader();
         }
 
         ServiceBuilderLoader<S> serviceBuilderLoader = ServiceBuilderLoader.load(service, classLoader);
         Iterator<ServiceBuilder<S>> builderServiceIterator = serviceBuilderLoader.iterator();
-        serviceBuilders = new HashSet<>();
+        serviceBuilders = new LinkedHashSet<>();
         while (builderServiceIterator.hasNext()) {
             serviceBuilders.add(builderServiceIterator.next());
         }
@@ -162,32 +679,121 @@ public class ServiceProviderBuilder {
     }
 
     @NonNull
-    private static <S> ServiceProviderPolicy getServiceProviderPolicy(Class<S> service) {
-        if (service == null) {
-            throw new NullPointerException("service is null");
+    private static ServiceProviderPolicy getServiceProviderPolicy(@NonNull ServiceBuilderEntry entry) {
+        ServiceProviderMetadata<?> metadata = entry.getMetadata();
+        if (metadata == null) {
+            Class<?> service = entry.getService();
+            metadata = loadServiceProviderMetadata(service);
+            if (metadata == null) {
+                mServiceBuilderMap.remove(service, entry);
+                throw new IllegalArgumentException(String.format("%s not annotation present by %s", service.getSimpleName(), ServiceProvider.class.getSimpleName()));
+            }
+            entry.setMetadata(metadata);
         }
+        return metadata.getPolicy();
+    }
 
-        ServiceProvider serviceProvider = service.getAnnotation(ServiceProvider.class);
+    /**
+     * Find the metadata generated next to service provider interface, fall back to read
+     * {@link ServiceProvider} annotation if interface is not compiled by the processor.
+     */
+    @Nullable
+    private static ServiceProviderMetadata<?> loadServiceProviderMetadata(@NonNull Class<?> service) {
+        ClassLoader classLoader = service.getClassLoader();
+        if (classLoader != null) {
+            try {
+                Class<?> metadataClass = Class.forName(service.getName() + ServiceProviderMetadata.SUFFIX, true, classLoader);
+                if (ServiceProviderMetadata.class.isAssignableFrom(metadataClass)) {
+                    return (ServiceProviderMetadata<?>) metadataClass.newInstance();
+                }
+            } catch (ClassNotFoundException ignored) {
+            } catch (InstantiationException ignored) {
+            } catch (IllegalAccessException ignored) {
+            }
+        }
+        final ServiceProvider serviceProvider = service.getAnnotation(ServiceProvider.class);
         if (serviceProvider == null) {
-            throw new IllegalArgumentException(String.format("%s not annotation present by %s", service.getSimpleName(), ServiceProvider.class.getSimpleName()));
+            return null;
         }
-        return serviceProvider.value();
+        return new ServiceProviderMetadata<Object>() {
+            @NonNull
+            @Override
+            public ServiceProviderPolicy getPolicy() {
+                return serviceProvider.value();
+            }
+        };
     }
 
     @NonNull
-    private static <S> Iterator<S> getIterator(final Class<S> service, final Set<? extends ServiceBuilder> serviceBuilderSet) {
+    private static <S> Iterator<S> getIterator(final Class<S> service, final ServiceBuilder<?>[] serviceBuilders) {
         return new Iterator<S>() {
-            Iterator<? extends ServiceBuilder> mIterator = serviceBuilderSet != null ? serviceBuilderSet.iterator() : null;
+            int mIndex = 0;
 
             @Override
             public boolean hasNext() {
-                return mIterator != null && mIterator.hasNext();
+                return mIndex < serviceBuilders.length;
             }
 
             @Override
             public S next() {
-                return mIterator != null ? service.cast(mIterator.next().build()) : null;
+                if (mIndex >= serviceBuilders.length) {
+                    throw new NoSuchElementException();
+                }
+                return build(service, serviceBuilders[mIndex++]);
             }
         };
     }
+
+    @NonNull
+    private static <S> S[] buildArray(@NonNull Class<S> service, @NonNull ServiceBuilder<?>[] serviceBuilders) {
+        S[] result = (S[]) Array.newInstance(service, serviceBuilders.length);
+        for (int i = 0; i < serviceBuilders.length; i++) {
+            result[i] = build(service, serviceBuilders[i]);
+        }
+        return result;
+    }
+
+    @NonNull
+    static <S> S build(@NonNull Class<S> service, @NonNull ServiceBuilder<?> serviceBuilder) {
+        if (serviceBuilder instanceof AbstractServiceBuilder
+                && ((AbstractServiceBuilder<?>) serviceBuilder).getDependencies().length > 0) {
+            return buildWithDependencies(service, serviceBuilder);
+        }
+        return buildService(service, serviceBuilder);
+    }
+
+    /**
+     * Build service whose implementation requires other services, guarding against dependency cycles
+     * across modules, which the processor can not find
+     */
+    @NonNull
+    private static <S> S buildWithDependencies(@NonNull Class<S> service, @NonNull ServiceBuilder<?> serviceBuilder) {
+        ArrayList<Class<?>> buildingServices = sBuildingServices.get();
+        int index = buildingServices.indexOf(service);
+        if (index >= 0) {
+            StringBuilder cycle = new StringBuilder();
+            for (Class<?> buildingService : buildingServices.subList(index, buildingServices.size())) {
+                cycle.append(buildingService.getSimpleName()).append(" -> ");
+            }
+            throw new BuilderInstantiationException(String.format("Dependency cycle %s%s", cycle, service.getSimpleName()));
+        }
+        buildingServices.add(service);
+        try {
+            return buildService(service, serviceBuilder);
+        } finally {
+            buildingServices.remove(buildingServices.size() - 1);
+        }
+    }
+
+    @NonNull
+    private static <S> S buildService(@NonNull Class<S> service, @NonNull ServiceBuilder<?> serviceBuilder) {
+        ServiceBuilderListener listener = sListener;
+        if (listener == null) {
+            return service.cast(serviceBuilder.build());
+        }
+        long start = System.nanoTime();
+        S result = service.cast(serviceBuilder.build());
+        listener.onServiceBuilt(service, serviceBuilder, System.nanoTime() - start);
+        return result;
+    }
 }
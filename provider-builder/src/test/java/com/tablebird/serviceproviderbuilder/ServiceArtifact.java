@@ -0,0 +1,164 @@
+package com.tablebird.serviceproviderbuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A class path directory holding the service files written by the processor, or by hand.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+final class ServiceArtifact {
+
+    static final String SERVICES_PATH = "META-INF/services/builder/";
+    static final String INDEX_PATH = "META-INF/services/builder.index";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String GENERATED_HEADER = "# Generated by service provider builder, crc32=";
+
+    private final File mDirectory;
+
+    ServiceArtifact(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Write a service file as the processor, with the checksum header
+     */
+    ServiceArtifact generatedServiceFile(Class<?> service, String... builders) throws IOException {
+        byte[] content = lines(builders);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(String.format("%s%08x\n", GENERATED_HEADER, crc.getValue()).getBytes(UTF_8));
+        output.write(content);
+        return write(SERVICES_PATH + service.getName(), output.toByteArray());
+    }
+
+    /**
+     * Write a service file without header, as an older processor or by hand
+     */
+    ServiceArtifact serviceFile(Class<?> service, String... lines) throws IOException {
+        return write(SERVICES_PATH + service.getName(), lines(lines));
+    }
+
+    ServiceArtifact index(Map<String, List<String>> services) throws IOException {
+        return write(INDEX_PATH, index(services, 1));
+    }
+
+    ServiceArtifact write(String path, byte[] content) throws IOException {
+        File file = new File(mDirectory, path);
+        file.getParentFile().mkdirs();
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(content);
+        }
+        return this;
+    }
+
+    URL getUrl() throws MalformedURLException {
+        return mDirectory.toURI().toURL();
+    }
+
+    static ClassLoader classLoader(ServiceArtifact... artifacts) throws MalformedURLException {
+        return new URLClassLoader(urls(artifacts), ServiceArtifact.class.getClassLoader());
+    }
+
+    static URL[] urls(ServiceArtifact... artifacts) throws MalformedURLException {
+        URL[] urls = new URL[artifacts.length];
+        for (int i = 0; i < artifacts.length; i++) {
+            urls[i] = artifacts[i].getUrl();
+        }
+        return urls;
+    }
+
+    static Map<String, List<String>> services(Class<?> service, String... builders) {
+        Map<String, List<String>> services = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>();
+        for (String builder : builders) {
+            names.add(builder);
+        }
+        services.put(service.getName(), names);
+        return services;
+    }
+
+    /**
+     * @param version version written in the header
+     * @return binary index of the services, in the layout of {@code ServicesFiles}
+     */
+    static byte[] index(Map<String, List<String>> services, int version) throws IOException {
+        List<String> strings = new ArrayList<>();
+        List<Integer> builders = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream bodyOutput = new DataOutputStream(body);
+        int builderCount = 0;
+        for (Map.Entry<String, List<String>> entry : services.entrySet()) {
+            stringIndex(strings, entry.getKey());
+            for (String builder : entry.getValue()) {
+                stringIndex(strings, builder);
+            }
+            builderCount += entry.getValue().size();
+        }
+        bodyOutput.writeInt(services.size());
+        bodyOutput.writeInt(builderCount);
+        bodyOutput.writeInt(strings.size());
+        for (Map.Entry<String, List<String>> entry : services.entrySet()) {
+            bodyOutput.writeInt(stringIndex(strings, entry.getKey()));
+            bodyOutput.writeInt(builders.size());
+            bodyOutput.writeInt(entry.getValue().size());
+            for (String builder : entry.getValue()) {
+                builders.add(stringIndex(strings, builder));
+            }
+        }
+        for (Integer builder : builders) {
+            bodyOutput.writeInt(builder);
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (String string : strings) {
+            bodyOutput.writeInt(data.size());
+            data.write(string.getBytes(UTF_8));
+        }
+        bodyOutput.writeInt(data.size());
+        data.writeTo(bodyOutput);
+        bodyOutput.flush();
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOutput = new DataOutputStream(index);
+        indexOutput.writeInt(0x53504249);
+        indexOutput.writeShort(version);
+        indexOutput.writeInt(body.size());
+        body.writeTo(indexOutput);
+        indexOutput.flush();
+        return index.toByteArray();
+    }
+
+    private static int stringIndex(List<String> strings, String string) {
+        int index = strings.indexOf(string);
+        if (index < 0) {
+            strings.add(string);
+            index = strings.size() - 1;
+        }
+        return index;
+    }
+
+    private static byte[] lines(String... lines) {
+        StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+        return content.toString().getBytes(UTF_8);
+    }
+}
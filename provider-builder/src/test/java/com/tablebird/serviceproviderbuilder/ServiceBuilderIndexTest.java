@@ -0,0 +1,99 @@
+package com.tablebird.serviceproviderbuilder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public class ServiceBuilderIndexTest {
+
+    private static final String SERVICE = "com.example.IService";
+    private static final String OTHER_SERVICE = "com.example.IOther";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readWrittenIndex() throws Exception {
+        Map<String, List<String>> services = new LinkedHashMap<>();
+        services.put(SERVICE, Arrays.asList("com.example.A_Builder", "com.example.B_Builder:1"));
+        services.put(OTHER_SERVICE, Collections.singletonList("com.example.A_Builder"));
+        ServiceArtifact artifact = new ServiceArtifact(mFolder.newFolder()).index(services);
+
+        ServiceBuilderIndex index = ServiceBuilderIndex.get(ServiceArtifact.classLoader(artifact), Runnable.class);
+
+        assertEquals(services.get(SERVICE), index.getServiceBuilderNames(SERVICE));
+        assertEquals(services.get(OTHER_SERVICE), index.getServiceBuilderNames(OTHER_SERVICE));
+        assertNull(index.getServiceBuilderNames("com.example.IMissing"));
+    }
+
+    @Test
+    public void mergeIndexesOfArtifacts() throws Exception {
+        ServiceArtifact first = new ServiceArtifact(mFolder.newFolder())
+                .index(ServiceArtifact.services(Runnable.class, "com.example.A_Builder", "com.example.B_Builder"));
+        ServiceArtifact second = new ServiceArtifact(mFolder.newFolder())
+                .index(ServiceArtifact.services(Runnable.class, "com.example.B_Builder", "com.example.C_Builder"));
+
+        ServiceBuilderIndex index = ServiceBuilderIndex.get(ServiceArtifact.classLoader(first, second), Runnable.class);
+
+        assertEquals(Arrays.asList("com.example.A_Builder", "com.example.B_Builder", "com.example.C_Builder"),
+                index.getServiceBuilderNames(Runnable.class.getName()));
+    }
+
+    @Test
+    public void readMergedIndexResource() throws Exception {
+        // Indexes concatenated by a resource merger, with anything between them
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write(ServiceArtifact.index(ServiceArtifact.services(Runnable.class, "com.example.A_Builder"), 1));
+        content.write("\n# merged\n".getBytes("UTF-8"));
+        content.write(ServiceArtifact.index(ServiceArtifact.services(Runnable.class, "com.example.B_Builder"), 1));
+        ServiceArtifact merged = new ServiceArtifact(mFolder.newFolder())
+                .write(ServiceArtifact.INDEX_PATH, content.toByteArray());
+
+        ServiceBuilderIndex index = ServiceBuilderIndex.get(ServiceArtifact.classLoader(merged), Runnable.class);
+
+        assertEquals(Arrays.asList("com.example.A_Builder", "com.example.B_Builder"),
+                index.getServiceBuilderNames(Runnable.class.getName()));
+    }
+
+    @Test
+    public void failOnUnsupportedVersion() throws Exception {
+        byte[] content = ServiceArtifact.index(ServiceArtifact.services(Runnable.class, "com.example.A_Builder"), 2);
+
+        assertIllegalIndex(content, "Unsupported service index version 2");
+    }
+
+    @Test
+    public void failOnTruncatedIndex() throws Exception {
+        byte[] content = ServiceArtifact.index(ServiceArtifact.services(Runnable.class, "com.example.A_Builder"), 1);
+
+        assertIllegalIndex(Arrays.copyOf(content, content.length - 1), "Truncated service index");
+    }
+
+    private void assertIllegalIndex(byte[] content, String message) throws Exception {
+        ServiceArtifact artifact = new ServiceArtifact(mFolder.newFolder()).write(ServiceArtifact.INDEX_PATH, content);
+        try {
+            ServiceBuilderIndex.get(ServiceArtifact.classLoader(artifact), Runnable.class);
+            fail("Illegal index read");
+        } catch (ServiceConfigurationError e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(Runnable.class.getName()));
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().endsWith(message));
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.tablebird.serviceproviderbuilder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public class ServiceBuilderLoaderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    public interface TestService {
+        String name();
+    }
+
+    static class IndexedBuilder implements ServiceBuilder<TestService> {
+        @Override
+        public TestService build() {
+            return new NamedService("indexed");
+        }
+    }
+
+    static class LegacyBuilder implements ServiceBuilder<TestService> {
+        @Override
+        public TestService build() {
+            return new NamedService("legacy");
+        }
+    }
+
+    static class NamedService implements TestService {
+        private final String mName;
+
+        NamedService(String name) {
+            mName = name;
+        }
+
+        @Override
+        public String name() {
+            return mName;
+        }
+    }
+
+    @Test
+    public void readIndexOnlyForIndexedService() throws Exception {
+        ServiceArtifact indexed = new ServiceArtifact(mFolder.newFolder())
+                .index(ServiceArtifact.services(TestService.class, IndexedBuilder.class.getName()))
+                .generatedServiceFile(TestService.class, IndexedBuilder.class.getName());
+        ServiceArtifact legacy = new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(TestService.class, "not a class name");
+        ResourceCountingClassLoader classLoader = new ResourceCountingClassLoader(indexed, legacy);
+
+        assertEquals(Arrays.asList("indexed"), build(classLoader));
+        assertEquals(0, classLoader.getServiceFileLookups());
+    }
+
+    @Test
+    public void readMergedIndexOnlyForIndexedService() throws Exception {
+        // Indexes and configuration files of the artifacts of an APK are merged into one resource each
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.write(ServiceArtifact.index(ServiceArtifact.services(TestService.class, IndexedBuilder.class.getName()), 1));
+        index.write(ServiceArtifact.index(ServiceArtifact.services(TestService.class, LegacyBuilder.class.getName()), 1));
+        ServiceArtifact merged = new ServiceArtifact(mFolder.newFolder())
+                .write(ServiceArtifact.INDEX_PATH, index.toByteArray())
+                .serviceFile(TestService.class, "not a class name");
+        ResourceCountingClassLoader classLoader = new ResourceCountingClassLoader(merged);
+
+        assertEquals(Arrays.asList("indexed", "legacy"), build(classLoader));
+        assertEquals(0, classLoader.getServiceFileLookups());
+    }
+
+    @Test
+    public void readServiceFilesOfServiceNotIndexed() throws Exception {
+        ServiceArtifact indexed = new ServiceArtifact(mFolder.newFolder())
+                .index(ServiceArtifact.services(Runnable.class, "com.example.RunnableBuilder"))
+                .generatedServiceFile(TestService.class, IndexedBuilder.class.getName());
+        ServiceArtifact legacy = new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(TestService.class, LegacyBuilder.class.getName());
+
+        assertEquals(Arrays.asList("indexed", "legacy"), build(ServiceArtifact.classLoader(indexed, legacy)));
+    }
+
+    @Test
+    public void releaseClassLoaderOfLoadedProviders() throws Exception {
+        ServiceArtifact legacy = new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(TestService.class, LegacyBuilder.class.getName());
+        WeakReference<ClassLoader> reference = loadIsolated(legacy);
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+
+    @Test
+    public void parseHandWrittenServiceFile() throws Exception {
+        ServiceArtifact artifact = new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(TestService.class, "  # comment", "", "a.B  # trailing comment", "a.C\r", "a.B", "a.$D:12");
+
+        assertEquals(Arrays.asList("a.B", "a.C", "a.$D:12"), parse(artifact));
+    }
+
+    @Test
+    public void trustServiceFileWithMatchingChecksum() throws Exception {
+        ServiceArtifact artifact = new ServiceArtifact(mFolder.newFolder())
+                .generatedServiceFile(TestService.class, "a.B", "not validated # comment");
+
+        assertEquals(Arrays.asList("a.B", "not validated"), parse(artifact));
+    }
+
+    @Test
+    public void validateServiceFileWithChecksumMismatch() throws Exception {
+        ServiceArtifact artifact = new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(TestService.class, "# Generated by service provider builder, crc32=00000000", "a.B",
+                        "not validated");
+
+        assertIllegalServiceFile(artifact, 3, "Illegal configuration-file syntax");
+    }
+
+    @Test
+    public void rejectMalformedLines() throws Exception {
+        String[][] lines = {
+                {"1a.B", "Illegal provider-class name: 1a.B"},
+                {"a.B c", "Illegal configuration-file syntax"},
+                {"a-B", "Illegal provider-class name: a-B"},
+                {"a.B:", "Illegal provider index: a.B:"},
+                {"a.B:x", "Illegal provider index: a.B:x"},
+                {"a.B:1234567890", "Illegal provider index: a.B:1234567890"},
+        };
+        for (String[] line : lines) {
+            ServiceArtifact artifact = new ServiceArtifact(mFolder.newFolder())
+                    .serviceFile(TestService.class, "a.A", line[0]);
+            assertIllegalServiceFile(artifact, 2, line[1]);
+        }
+    }
+
+    private static void assertIllegalServiceFile(ServiceArtifact artifact, int line, String message) throws Exception {
+        try {
+            fail("Illegal service file parsed: " + parse(artifact));
+        } catch (ServiceConfigurationError e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(":" + line + ": " + message));
+        }
+    }
+
+    private static List<String> parse(ServiceArtifact artifact) throws Exception {
+        URL url = new URL(artifact.getUrl(), ServiceArtifact.SERVICES_PATH + TestService.class.getName());
+        return new ArrayList<>(ServiceBuilderLoader.parse(TestService.class, url));
+    }
+
+    // Load the providers with a class loader defining the provider class itself
+    private static WeakReference<ClassLoader> loadIsolated(ServiceArtifact artifact) throws Exception {
+        URL classes = LegacyBuilder.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader classLoader = new URLClassLoader(new URL[]{artifact.getUrl(), classes},
+                ServiceBuilderLoaderTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.equals(LegacyBuilder.class.getName())) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> c = findLoadedClass(name);
+                    return c != null ? c : findClass(name);
+                }
+            }
+        };
+        for (ServiceBuilder<TestService> serviceBuilder : ServiceBuilderLoader.load(TestService.class, classLoader)) {
+            assertEquals(classLoader, serviceBuilder.getClass().getClassLoader());
+        }
+        return new WeakReference<>(classLoader);
+    }
+
+    private static List<String> build(ClassLoader classLoader) {
+        List<String> names = new ArrayList<>();
+        for (ServiceBuilder<TestService> serviceBuilder : ServiceBuilderLoader.load(TestService.class, classLoader)) {
+            names.add(serviceBuilder.build().name());
+        }
+        return names;
+    }
+
+    /**
+     * Count the lookups of the configuration files of {@link TestService}
+     */
+    private static class ResourceCountingClassLoader extends URLClassLoader {
+        private final AtomicInteger mServiceFileLookups = new AtomicInteger();
+
+        ResourceCountingClassLoader(ServiceArtifact... artifacts) throws IOException {
+            super(ServiceArtifact.urls(artifacts), ServiceBuilderLoaderTest.class.getClassLoader());
+        }
+
+        int getServiceFileLookups() {
+            return mServiceFileLookups.get();
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+            if (name.equals(ServiceArtifact.SERVICES_PATH + TestService.class.getName())) {
+                mServiceFileLookups.incrementAndGet();
+            }
+            return super.getResources(name);
+        }
+    }
+}
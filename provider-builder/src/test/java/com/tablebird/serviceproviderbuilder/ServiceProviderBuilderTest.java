@@ -0,0 +1,314 @@
+package com.tablebird.serviceproviderbuilder;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public class ServiceProviderBuilderTest {
+
+    private static final int THREAD_COUNT = 16;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final CountingListener mListener = new CountingListener();
+
+    private final ClassLoader mContextClassLoader = Thread.currentThread().getContextClassLoader();
+
+    @ServiceProvider
+    public interface CountedService {
+    }
+
+    static class CountedBuilder implements ServiceBuilder<CountedService> {
+        static final AtomicInteger sInstances = new AtomicInteger();
+
+        CountedBuilder() {
+            sInstances.incrementAndGet();
+        }
+
+        @Override
+        public CountedService build() {
+            return new CountedService() {
+            };
+        }
+    }
+
+    @ServiceProvider(ServiceProviderPolicy.SINGLE)
+    public interface SingleService {
+    }
+
+    static class SingleBuilder implements ServiceBuilder<SingleService> {
+        @Override
+        public SingleService build() {
+            return new SingleService() {
+            };
+        }
+    }
+
+    static class OtherSingleBuilder extends SingleBuilder {
+    }
+
+    @ServiceProvider
+    public interface HandledService {
+    }
+
+    static class SingletonBuilder extends AbstractServiceBuilder<HandledService> {
+        @NonNull
+        @Override
+        public ServiceScope getScope() {
+            return ServiceScope.SINGLETON;
+        }
+
+        // A new instance each time, so the handle's cache is visible
+        @NonNull
+        @Override
+        public HandledService build() {
+            return new HandledService() {
+            };
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Thread.currentThread().setContextClassLoader(mContextClassLoader);
+        ServiceProviderBuilder.setListener(null);
+        ServiceProviderBuilder.invalidateAll();
+    }
+
+    @Test
+    public void resolveOnceUnderConcurrentBuilds() throws Exception {
+        final ClassLoader classLoader = ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(CountedService.class, CountedBuilder.class.getName()));
+        ServiceProviderBuilder.setListener(mListener);
+        CountedBuilder.sInstances.set(0);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        List<Future<ServiceBuilder[]>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                futures.add(executor.submit(new Callable<ServiceBuilder[]>() {
+                    @Override
+                    public ServiceBuilder[] call() throws Exception {
+                        start.await();
+                        return ServiceProviderBuilder.getServiceBuilders(CountedService.class, classLoader);
+                    }
+                }));
+            }
+            start.countDown();
+            ServiceBuilder[] serviceBuilders = futures.get(0).get();
+            for (Future<ServiceBuilder[]> future : futures) {
+                assertSame(serviceBuilders, future.get());
+            }
+            assertEquals(1, serviceBuilders.length);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, CountedBuilder.sInstances.get());
+        assertEquals(1, mListener.getCacheMisses(CountedService.class));
+        assertEquals(THREAD_COUNT - 1, mListener.getCacheHits(CountedService.class));
+    }
+
+    @Test
+    public void cacheNoImplementationUntilInvalidated() throws Exception {
+        ClassLoader emptyClassLoader = ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder()));
+        ClassLoader classLoader = ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(CountedService.class, CountedBuilder.class.getName()));
+        ServiceProviderBuilder.setListener(mListener);
+
+        assertNull(ServiceProviderBuilder.buildHighestPriorityService(CountedService.class, emptyClassLoader));
+        // The empty result is cached, the implementation is not looked up again
+        assertNull(ServiceProviderBuilder.buildHighestPriorityService(CountedService.class, classLoader));
+        assertEquals(1, mListener.getCacheMisses(CountedService.class));
+
+        ServiceProviderBuilder.invalidate(CountedService.class);
+        assertNotNull(ServiceProviderBuilder.buildHighestPriorityService(CountedService.class, classLoader));
+        assertEquals(2, mListener.getCacheMisses(CountedService.class));
+    }
+
+    @Test
+    public void cacheServiceConfigurationErrorUntilInvalidated() throws Exception {
+        ClassLoader brokenClassLoader = ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(CountedService.class, "com.example.MissingBuilder"));
+        ClassLoader classLoader = ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(CountedService.class, CountedBuilder.class.getName()));
+        ServiceProviderBuilder.setListener(mListener);
+
+        for (ClassLoader loader : new ClassLoader[]{brokenClassLoader, classLoader}) {
+            try {
+                ServiceProviderBuilder.buildHighestPriorityService(CountedService.class, loader);
+                fail("ServiceConfigurationError not thrown");
+            } catch (ServiceConfigurationError e) {
+                assertNotNull(e.getCause());
+            }
+        }
+        assertEquals(1, mListener.getCacheMisses(CountedService.class));
+
+        ServiceProviderBuilder.invalidateAll();
+        assertNotNull(ServiceProviderBuilder.buildHighestPriorityService(CountedService.class, classLoader));
+        assertEquals(2, mListener.getCacheMisses(CountedService.class));
+    }
+
+    @Test
+    public void cacheSinglePolicyViolationUntilInvalidated() throws Exception {
+        ClassLoader violatingClassLoader = ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(SingleService.class, SingleBuilder.class.getName(), OtherSingleBuilder.class.getName()));
+        ClassLoader classLoader = ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(SingleService.class, SingleBuilder.class.getName()));
+        ServiceProviderBuilder.setListener(mListener);
+
+        for (ClassLoader loader : new ClassLoader[]{violatingClassLoader, classLoader}) {
+            try {
+                ServiceProviderBuilder.buildSingleService(SingleService.class, loader);
+                fail("BuilderInstantiationException not thrown");
+            } catch (BuilderInstantiationException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("policy is single"));
+            }
+        }
+        assertEquals(1, mListener.getCacheMisses(SingleService.class));
+
+        ServiceProviderBuilder.invalidate(SingleService.class);
+        assertNotNull(ServiceProviderBuilder.buildSingleService(SingleService.class, classLoader));
+        assertEquals(2, mListener.getCacheMisses(SingleService.class));
+    }
+
+    @Test
+    public void resetHandleOnInvalidate() throws Exception {
+        Thread.currentThread().setContextClassLoader(ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(HandledService.class, SingletonBuilder.class.getName())));
+        ServiceHandle<HandledService> handle = ServiceProviderBuilder.handle(HandledService.class);
+        assertSame(handle, ServiceProviderBuilder.handle(HandledService.class));
+
+        HandledService service = handle.get();
+        assertNotNull(service);
+        assertSame(service, handle.get());
+
+        ServiceProviderBuilder.invalidate(HandledService.class);
+        HandledService rebuilt = handle.get();
+        assertNotSame(service, rebuilt);
+        assertSame(rebuilt, handle.get());
+
+        ServiceProviderBuilder.invalidateAll();
+        assertNotSame(rebuilt, handle.get());
+    }
+
+    @Test
+    public void resolveHandleAgainOnInvalidate() throws Exception {
+        Thread.currentThread().setContextClassLoader(ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder())));
+        ServiceProviderBuilder.setListener(mListener);
+        ServiceHandle<HandledService> handle = ServiceProviderBuilder.handle(HandledService.class);
+        assertNull(handle.get());
+
+        Thread.currentThread().setContextClassLoader(ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(HandledService.class, SingletonBuilder.class.getName())));
+        assertNull(handle.get());
+        // The handle caches the missing implementation, the builders are not looked up again
+        assertEquals(1, mListener.getCacheMisses(HandledService.class));
+        assertEquals(0, mListener.getCacheHits(HandledService.class));
+
+        ServiceProviderBuilder.invalidate(HandledService.class);
+        assertNotNull(handle.get());
+    }
+
+    @Test
+    public void notifyListenerOfPrewarmedSingleton() throws Exception {
+        Thread.currentThread().setContextClassLoader(ServiceArtifact.classLoader(new ServiceArtifact(mFolder.newFolder())
+                .serviceFile(HandledService.class, SingletonBuilder.class.getName())));
+        ServiceProviderBuilder.setListener(mListener);
+
+        ServiceProviderBuilder.prewarm(new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                command.run();
+            }
+        }, true, HandledService.class);
+
+        assertEquals(1, mListener.getBuilds(HandledService.class));
+    }
+
+    static class CountingListener implements ServiceBuilderListener {
+        private final ConcurrentHashMap<Class<?>, AtomicInteger> mCacheHits = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Class<?>, AtomicInteger> mCacheMisses = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Class<?>, AtomicInteger> mBuilds = new ConcurrentHashMap<>();
+
+        int getCacheHits(Class<?> service) {
+            return getCount(mCacheHits, service);
+        }
+
+        int getCacheMisses(Class<?> service) {
+            return getCount(mCacheMisses, service);
+        }
+
+        int getBuilds(Class<?> service) {
+            return getCount(mBuilds, service);
+        }
+
+        private static int getCount(ConcurrentHashMap<Class<?>, AtomicInteger> counts, Class<?> service) {
+            AtomicInteger count = counts.get(service);
+            return count != null ? count.get() : 0;
+        }
+
+        private static void increment(ConcurrentHashMap<Class<?>, AtomicInteger> counts, Class<?> service) {
+            counts.putIfAbsent(service, new AtomicInteger());
+            counts.get(service).incrementAndGet();
+        }
+
+        @Override
+        public void onCacheHit(@NonNull Class<?> service) {
+            increment(mCacheHits, service);
+        }
+
+        @Override
+        public void onCacheMiss(@NonNull Class<?> service) {
+            increment(mCacheMisses, service);
+        }
+
+        @Override
+        public void onRegistryHit(@NonNull Class<?> service) {
+        }
+
+        @Override
+        public void onLoaderFallback(@NonNull Class<?> service) {
+        }
+
+        @Override
+        public void onConfigurationParsed(@NonNull Class<?> service, @NonNull URL url, long durationNanos) {
+        }
+
+        @Override
+        public void onBuilderInstantiated(@NonNull Class<?> service, @NonNull String builderName, long loadNanos, long instantiationNanos) {
+        }
+
+        @Override
+        public void onServiceBuilt(@NonNull Class<?> service, @NonNull ServiceBuilder<?> serviceBuilder, long durationNanos) {
+            increment(mBuilds, service);
+        }
+    }
+}
@@ -4,20 +4,26 @@ import androidx.annotation.NonNull;
 
 import com.google.auto.common.MoreElements;
 import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
 import com.tablebird.serviceproviderbuilder.Build;
+import com.tablebird.serviceproviderbuilder.ServiceScope;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
-import javax.lang.model.element.Element;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.TypeMirror;
@@ -28,25 +34,82 @@ import javax.lang.model.type.TypeMirror;
  */
 final class BuilderJava {
 
-    private static final ClassName SERVICE_BUILDER = ClassName.get("com.tablebird.serviceproviderbuilder", "ServiceBuilder");
+    private static final ClassName ABSTRACT_SERVICE_BUILDER = ClassName.get("com.tablebird.serviceproviderbuilder", "AbstractServiceBuilder");
+    private static final String INSTANCE = "sInstance";
+    private static final String THREAD_INSTANCE = "THREAD_INSTANCE";
+    private static final String DEPENDENCIES = "DEPENDENCIES";
+    static final ClassName SERVICE_PROVIDER_BUILDER = ClassName.get("com.tablebird.serviceproviderbuilder", "ServiceProviderBuilder");
+    private TypeElement mElement;
     private ClassName mBuilderClassName;
     private TypeName mServiceName;
+    private Set<TypeElement> mServiceProviderElements;
     private HashSet<ClassName> mServiceProviders;
     private String mParameter;
     private boolean mIsConstructor;
+    private ServiceScope mScope;
+    private int mPriority;
+    private String mName;
+    private List<ClassName> mDependencies;
 
-    private BuilderJava(TypeName serviceName, ClassName builderClassName, HashSet<ClassName> serviceProviders, String parameter, boolean isConstructor) {
+    private BuilderJava(TypeElement element, TypeName serviceName, ClassName builderClassName, Set<TypeElement> serviceProviderElements, HashSet<ClassName> serviceProviders, String parameter, boolean isConstructor, ServiceScope scope, int priority, String name, List<ClassName> dependencies) {
+        mElement = element;
         mServiceName = serviceName;
         mBuilderClassName = builderClassName;
+        mServiceProviderElements = serviceProviderElements;
         mServiceProviders = serviceProviders;
         mParameter = parameter;
         mIsConstructor = isConstructor;
+        mScope = scope;
+        mPriority = priority;
+        mName = name;
+        mDependencies = dependencies;
     }
 
     public ClassName getBuilderClassName() {
         return mBuilderClassName;
     }
 
+    /**
+     * @return the service implementation, originating element of the generated builder
+     */
+    TypeElement getElement() {
+        return mElement;
+    }
+
+    TypeName getServiceName() {
+        return mServiceName;
+    }
+
+    HashSet<ClassName> getServiceProviders() {
+        return mServiceProviders;
+    }
+
+    Set<TypeElement> getServiceProviderElements() {
+        return mServiceProviderElements;
+    }
+
+    ServiceScope getScope() {
+        return mScope;
+    }
+
+    int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * @return service providers passed to the constructor or the build service method, in order
+     */
+    List<ClassName> getDependencies() {
+        return mDependencies;
+    }
+
+    /**
+     * @return name of the implementation, empty if unnamed
+     */
+    String getName() {
+        return mName;
+    }
+
     private void setBuilderClassName(ClassName builderClassName) {
         mBuilderClassName = builderClassName;
     }
@@ -61,17 +124,67 @@ final class BuilderJava {
     private TypeSpec createType() {
         TypeSpec.Builder builder = TypeSpec.classBuilder(mBuilderClassName.simpleName())
                 .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addOriginatingElement(mElement)
                 .addAnnotation(createBuildAnnotation());
 
-        builder.addSuperinterface(ParameterizedTypeName.get(SERVICE_BUILDER, mServiceName));
+        builder.superclass(ParameterizedTypeName.get(ABSTRACT_SERVICE_BUILDER, mServiceName));
+
+        if (mScope == ServiceScope.SINGLETON) {
+            builder.addField(createInstanceField());
+        } else if (mScope == ServiceScope.THREAD) {
+            builder.addField(createThreadInstanceField());
+        }
+
+        if (!mDependencies.isEmpty()) {
+            builder.addField(createDependenciesField(DEPENDENCIES, mDependencies));
+        }
 
         builder.addMethod(createConstructorMethod());
 
         builder.addMethod(createBuilderLoadMethod());
 
+        builder.addMethod(createScopeMethod());
+
+        builder.addMethod(createPriorityMethod());
+
+        if (!mName.isEmpty()) {
+            builder.addMethod(createNameMethod());
+        }
+
+        builder.addMethod(createImplementationClassMethod());
+
+        if (!mDependencies.isEmpty()) {
+            builder.addMethod(createDependenciesMethod());
+        }
+
         return builder.build();
     }
 
+    /**
+     * Singleton built under the lock of the builder class rather than in a class initializer, a failed
+     * build, as a dependency cycle across modules, throws to the caller and is retried by the next build
+     */
+    private FieldSpec createInstanceField() {
+        return FieldSpec.builder(mServiceName, INSTANCE, Modifier.PRIVATE, Modifier.STATIC, Modifier.VOLATILE)
+                .build();
+    }
+
+    private FieldSpec createThreadInstanceField() {
+        TypeName threadLocalName = ParameterizedTypeName.get(ClassName.get(ThreadLocal.class), mServiceName);
+        TypeSpec threadLocal = TypeSpec.anonymousClassBuilder("")
+                .superclass(threadLocalName)
+                .addMethod(MethodSpec.methodBuilder("initialValue")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .returns(mServiceName)
+                        .addStatement("return $L", createServiceCode())
+                        .build())
+                .build();
+        return FieldSpec.builder(threadLocalName, THREAD_INSTANCE, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", threadLocal)
+                .build();
+    }
+
     private AnnotationSpec createBuildAnnotation() {
         AnnotationSpec.Builder builder = AnnotationSpec.builder(ClassName.get(Build.class));
         if (mServiceProviders != null && !mServiceProviders.isEmpty()) {
@@ -85,6 +198,13 @@ final class BuilderJava {
             }
             codeBlockBuilder.add("}");
             builder.addMember("serviceProviders", codeBlockBuilder.build());
+            if (!mName.isEmpty()) {
+                CodeBlock.Builder namesBuilder = CodeBlock.builder().add("{$S", mName);
+                for (int i = 1; i < mServiceProviders.size(); i++) {
+                    namesBuilder.add(", $S", mName);
+                }
+                builder.addMember("names", namesBuilder.add("}").build());
+            }
         }
         return builder.build();
     }
@@ -101,12 +221,102 @@ final class BuilderJava {
                 .addAnnotation(NonNull.class)
                 .addModifiers(Modifier.PUBLIC)
                 .returns(mServiceName);
+        switch (mScope) {
+            case SINGLETON:
+                result.addStatement("$T instance = $N", mServiceName, INSTANCE)
+                        .beginControlFlow("if (instance == null)")
+                        .beginControlFlow("synchronized ($T.class)", mBuilderClassName)
+                        .addStatement("instance = $N", INSTANCE)
+                        .beginControlFlow("if (instance == null)")
+                        .addStatement("instance = $L", createServiceCode())
+                        .addStatement("$N = instance", INSTANCE)
+                        .endControlFlow()
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return instance");
+                break;
+            case THREAD:
+                result.addStatement("return $N.get()", THREAD_INSTANCE);
+                break;
+            default:
+                result.addStatement("return $L", createServiceCode());
+                break;
+        }
+        return result.build();
+    }
+
+    CodeBlock createServiceCode() {
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        // Dependencies are looked up with the class loader of the implementation requiring them
+        for (int i = 0; i < mDependencies.size(); i++) {
+            arguments.add(i == 0 ? "$T.requireService($T.class, $T.class.getClassLoader())"
+                            : ", $T.requireService($T.class, $T.class.getClassLoader())",
+                    SERVICE_PROVIDER_BUILDER, mDependencies.get(i), mServiceName);
+        }
         if (mIsConstructor) {
-            result.addStatement("return new $T()", mServiceName);
+            return CodeBlock.of("new $T($L)", mServiceName, arguments.build());
         } else {
-            result.addStatement("return $T.$N()", mServiceName, mParameter);
+            return CodeBlock.of("$T.$N($L)", mServiceName, mParameter, arguments.build());
         }
-        return result.build();
+    }
+
+    static FieldSpec createDependenciesField(String name, List<ClassName> dependencies) {
+        CodeBlock.Builder initializer = CodeBlock.builder().add("{");
+        for (int i = 0; i < dependencies.size(); i++) {
+            initializer.add(i == 0 ? "$T.class" : ", $T.class", dependencies.get(i));
+        }
+        TypeName classArrayName = ArrayTypeName.of(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class)));
+        return FieldSpec.builder(classArrayName, name, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer(initializer.add("}").build())
+                .build();
+    }
+
+    private MethodSpec createDependenciesMethod() {
+        return MethodSpec.methodBuilder("getDependencies")
+                .addAnnotation(Override.class)
+                .addAnnotation(NonNull.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ArrayTypeName.of(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class))))
+                .addStatement("return $N", DEPENDENCIES)
+                .build();
+    }
+
+    private MethodSpec createScopeMethod() {
+        return MethodSpec.methodBuilder("getScope")
+                .addAnnotation(Override.class)
+                .addAnnotation(NonNull.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ServiceScope.class)
+                .addStatement("return $T.$L", ServiceScope.class, mScope.name())
+                .build();
+    }
+
+    private MethodSpec createPriorityMethod() {
+        return MethodSpec.methodBuilder("getPriority")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT)
+                .addStatement("return $L", mPriority)
+                .build();
+    }
+
+    private MethodSpec createNameMethod() {
+        return MethodSpec.methodBuilder("getName")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .addStatement("return $S", mName)
+                .build();
+    }
+
+    private MethodSpec createImplementationClassMethod() {
+        return MethodSpec.methodBuilder("getImplementationClass")
+                .addAnnotation(Override.class)
+                .addAnnotation(NonNull.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class)))
+                .addStatement("return $T.class", mServiceName)
+                .build();
     }
 
     @Override
@@ -132,10 +342,14 @@ final class BuilderJava {
                 ", mServiceProviders=" + mServiceProviders +
                 ", mParameter='" + mParameter + '\'' +
                 ", mIsConstructor=" + mIsConstructor +
+                ", mScope=" + mScope +
+                ", mPriority=" + mPriority +
+                ", mName='" + mName + '\'' +
+                ", mDependencies=" + mDependencies +
                 '}';
     }
 
-    static Builder newBuilder(TypeElement enclosingElement, HashSet<Element> serviceProviderElements) {
+    static Builder newBuilder(TypeElement enclosingElement, Set<TypeElement> serviceProviderElements) {
         TypeMirror typeMirror = enclosingElement.asType();
 
         TypeName targetType = TypeName.get(typeMirror);
@@ -149,37 +363,43 @@ final class BuilderJava {
         ClassName builderClassName = ClassName.get(packageName, className + "_Builder");
 
         HashSet<ClassName> serviceProviders = getElementClassNames(serviceProviderElements);
-        return new Builder(targetType, builderClassName, serviceProviders);
+        return new Builder(enclosingElement, targetType, builderClassName, serviceProviderElements, serviceProviders);
     }
 
-    private static HashSet<ClassName> getElementClassNames(HashSet<Element> serviceProviderElements) {
+    private static HashSet<ClassName> getElementClassNames(Set<TypeElement> serviceProviderElements) {
         HashSet<ClassName> serviceProviders = new HashSet<>();
-        for (Element serviceProviderElement : serviceProviderElements) {
-            if (serviceProviderElement instanceof TypeElement) {
-                String serviceProviderPackageName = MoreElements.getPackage(serviceProviderElement).getQualifiedName().toString();
-                String serviceProviderClassName = ((TypeElement) serviceProviderElement).getQualifiedName().toString().substring(
-                        serviceProviderPackageName.length() + 1);
-                int innerIndex = serviceProviderClassName.indexOf(".");
-                if (innerIndex > -1 && innerIndex < serviceProviderClassName.length() - 1) {
-                    serviceProviderPackageName =  serviceProviderPackageName + "." + serviceProviderClassName.substring(0, innerIndex);
-                    serviceProviderClassName = serviceProviderClassName.substring(innerIndex + 1);
-                }
-                serviceProviders.add(ClassName.get(serviceProviderPackageName, serviceProviderClassName));
+        for (TypeElement serviceProviderElement : serviceProviderElements) {
+            String serviceProviderPackageName = MoreElements.getPackage(serviceProviderElement).getQualifiedName().toString();
+            String serviceProviderClassName = serviceProviderElement.getQualifiedName().toString().substring(
+                    serviceProviderPackageName.length() + 1);
+            int innerIndex = serviceProviderClassName.indexOf(".");
+            if (innerIndex > -1 && innerIndex < serviceProviderClassName.length() - 1) {
+                serviceProviderPackageName =  serviceProviderPackageName + "." + serviceProviderClassName.substring(0, innerIndex);
+                serviceProviderClassName = serviceProviderClassName.substring(innerIndex + 1);
             }
+            serviceProviders.add(ClassName.get(serviceProviderPackageName, serviceProviderClassName));
         }
         return serviceProviders;
     }
 
     static class Builder {
+        private TypeElement mElement;
         private TypeName mServiceName;
         private ClassName mBuilderClassName;
+        private Set<TypeElement> mServiceProviderElements;
         private HashSet<ClassName> mServiceProviders;
         private boolean mIsConstructor;
         private String mMethod;
+        private ServiceScope mScope = ServiceScope.PROTOTYPE;
+        private int mPriority;
+        private String mName = "";
+        private List<ClassName> mDependencies = Collections.emptyList();
 
-        private Builder(TypeName serviceName, ClassName builderClassName, HashSet<ClassName> serviceProviders) {
+        private Builder(TypeElement element, TypeName serviceName, ClassName builderClassName, Set<TypeElement> serviceProviderElements, HashSet<ClassName> serviceProviders) {
+            mElement = element;
             mServiceName = serviceName;
             mBuilderClassName = builderClassName;
+            mServiceProviderElements = serviceProviderElements;
             mServiceProviders = serviceProviders;
         }
 
@@ -191,8 +411,24 @@ final class BuilderJava {
             mMethod = method;
         }
 
+        void setScope(ServiceScope scope) {
+            mScope = scope;
+        }
+
+        void setPriority(int priority) {
+            mPriority = priority;
+        }
+
+        void setName(String name) {
+            mName = name;
+        }
+
+        void setDependencies(List<ClassName> dependencies) {
+            mDependencies = dependencies;
+        }
+
         BuilderJava build() {
-            return new BuilderJava(mServiceName, mBuilderClassName, mServiceProviders, mMethod, mIsConstructor);
+            return new BuilderJava(mElement, mServiceName, mBuilderClassName, mServiceProviderElements, mServiceProviders, mMethod, mIsConstructor, mScope, mPriority, mName, mDependencies);
         }
     }
 }
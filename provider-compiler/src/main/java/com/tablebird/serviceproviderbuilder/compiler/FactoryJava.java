@@ -0,0 +1,394 @@
+package com.tablebird.serviceproviderbuilder.compiler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+import com.tablebird.serviceproviderbuilder.Build;
+import com.tablebird.serviceproviderbuilder.ServiceScope;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.lang.model.element.Modifier;
+
+/**
+ * Single service builder of all service implementations of a module, building the implementation of
+ * the index passed to its constructor. Referenced as {@code FactoryClassName:index} by the service files.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+final class FactoryJava {
+
+    static final char INDEX_SEPARATOR = ':';
+
+    private static final ClassName ABSTRACT_SERVICE_BUILDER = ClassName.get("com.tablebird.serviceproviderbuilder", "AbstractServiceBuilder");
+    private static final String INSTANCES = "INSTANCES";
+    private static final String LOCKS = "LOCKS";
+    private static final String THREAD_INSTANCES = "THREAD_INSTANCES";
+    private static final String INDEX = "mIndex";
+    private static final String DEPENDENCIES = "DEPENDENCIES_";
+
+    private final ClassName mFactoryClassName;
+    private final List<BuilderJava> mBuilders;
+    private final boolean mHasSingleton;
+    private final boolean mHasThread;
+    private final boolean mHasName;
+    private final boolean mHasDependencies;
+
+    FactoryJava(ClassName factoryClassName, List<BuilderJava> builders) {
+        mFactoryClassName = factoryClassName;
+        mBuilders = builders;
+        boolean hasSingleton = false;
+        boolean hasThread = false;
+        boolean hasName = false;
+        boolean hasDependencies = false;
+        for (BuilderJava builder : builders) {
+            hasSingleton |= builder.getScope() == ServiceScope.SINGLETON;
+            hasThread |= builder.getScope() == ServiceScope.THREAD;
+            hasName |= !builder.getName().isEmpty();
+            hasDependencies |= !builder.getDependencies().isEmpty();
+        }
+        mHasSingleton = hasSingleton;
+        mHasThread = hasThread;
+        mHasName = hasName;
+        mHasDependencies = hasDependencies;
+    }
+
+    /**
+     * @return name of the builder of index in service files
+     */
+    String getBuilderName(int index) {
+        return mFactoryClassName.reflectionName() + INDEX_SEPARATOR + index;
+    }
+
+    JavaFile brewJava() {
+        TypeSpec.Builder builder = TypeSpec.classBuilder(mFactoryClassName.simpleName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addAnnotation(createBuildAnnotation())
+                .superclass(ParameterizedTypeName.get(ABSTRACT_SERVICE_BUILDER, ClassName.OBJECT));
+        for (BuilderJava builderJava : mBuilders) {
+            builder.addOriginatingElement(builderJava.getElement());
+        }
+        if (mHasSingleton) {
+            builder.addField(createInstancesField())
+                    .addField(createLocksField());
+        }
+        if (mHasThread) {
+            builder.addField(createThreadInstancesField());
+        }
+        for (int i = 0; i < mBuilders.size(); i++) {
+            if (!mBuilders.get(i).getDependencies().isEmpty()) {
+                builder.addField(BuilderJava.createDependenciesField(DEPENDENCIES + i, mBuilders.get(i).getDependencies()));
+            }
+        }
+        builder.addField(TypeName.INT, INDEX, Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(createConstructorMethod())
+                .addMethod(createBuildMethod())
+                .addMethod(createScopeMethod())
+                .addMethod(createPriorityMethod())
+                .addMethod(createImplementationClassMethod());
+        if (mHasName) {
+            builder.addMethod(createNameMethod());
+        }
+        if (mHasDependencies) {
+            builder.addMethod(createDependenciesMethod());
+        }
+        if (mHasSingleton || mHasThread) {
+            builder.addMethod(createCreateMethod());
+        }
+        if (mHasSingleton) {
+            builder.addMethod(createSingletonMethod());
+        }
+        if (mHasThread) {
+            builder.addMethod(createThreadMethod());
+        }
+        return JavaFile.builder(mFactoryClassName.packageName(), builder.build())
+                .addFileComment("Generated code from Service provider builder. Do not modify!")
+                .build();
+    }
+
+    private AnnotationSpec createBuildAnnotation() {
+        CodeBlock.Builder serviceProviders = CodeBlock.builder().add("{");
+        CodeBlock.Builder indexes = CodeBlock.builder().add("{");
+        CodeBlock.Builder names = CodeBlock.builder().add("{");
+        boolean first = true;
+        for (int i = 0; i < mBuilders.size(); i++) {
+            for (ClassName serviceProvider : mBuilders.get(i).getServiceProviders()) {
+                serviceProviders.add(first ? "$T.class" : ", $T.class", serviceProvider);
+                indexes.add(first ? "$L" : ", $L", i);
+                names.add(first ? "$S" : ", $S", mBuilders.get(i).getName());
+                first = false;
+            }
+        }
+        AnnotationSpec.Builder builder = AnnotationSpec.builder(ClassName.get(Build.class))
+                .addMember("serviceProviders", serviceProviders.add("}").build())
+                .addMember("indexes", indexes.add("}").build());
+        if (mHasName) {
+            builder.addMember("names", names.add("}").build());
+        }
+        return builder.build();
+    }
+
+    private FieldSpec createInstancesField() {
+        TypeName instancesName = ParameterizedTypeName.get(ClassName.get(AtomicReferenceArray.class), ClassName.OBJECT);
+        return FieldSpec.builder(instancesName, INSTANCES, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T($L)", instancesName, mBuilders.size())
+                .build();
+    }
+
+    /**
+     * A lock per singleton, so building singletons of other indexes that depend on each other across
+     * factories never waits on a lock held by the other build
+     */
+    private FieldSpec createLocksField() {
+        CodeBlock.Builder locks = CodeBlock.builder().add("{");
+        for (int i = 0; i < mBuilders.size(); i++) {
+            if (i > 0) {
+                locks.add(", ");
+            }
+            if (mBuilders.get(i).getScope() == ServiceScope.SINGLETON) {
+                locks.add("new $T()", Object.class);
+            } else {
+                locks.add("null");
+            }
+        }
+        return FieldSpec.builder(ArrayTypeName.of(Object.class), LOCKS, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer(locks.add("}").build())
+                .build();
+    }
+
+    private FieldSpec createThreadInstancesField() {
+        TypeName threadLocalName = ParameterizedTypeName.get(ClassName.get(ThreadLocal.class), ArrayTypeName.of(Object.class));
+        TypeSpec threadLocal = TypeSpec.anonymousClassBuilder("")
+                .superclass(threadLocalName)
+                .addMethod(MethodSpec.methodBuilder("initialValue")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .returns(ArrayTypeName.of(Object.class))
+                        .addStatement("return new $T[$L]", Object.class, mBuilders.size())
+                        .build())
+                .build();
+        return FieldSpec.builder(threadLocalName, THREAD_INSTANCES, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", threadLocal)
+                .build();
+    }
+
+    private MethodSpec createConstructorMethod() {
+        return MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "index")
+                .addStatement("$N = index", INDEX)
+                .build();
+    }
+
+    private MethodSpec createBuildMethod() {
+        CodeBlock.Builder code = CodeBlock.builder().beginControlFlow("switch ($N)", INDEX);
+        for (int i = 0; i < mBuilders.size(); i++) {
+            code.add("case $L:\n", i).indent();
+            switch (mBuilders.get(i).getScope()) {
+                case SINGLETON:
+                    code.addStatement("return singleton($L)", i);
+                    break;
+                case THREAD:
+                    code.addStatement("return thread($L)", i);
+                    break;
+                default:
+                    code.addStatement("return $L", mBuilders.get(i).createServiceCode());
+                    break;
+            }
+            code.unindent();
+        }
+        code.add("default:\n").indent()
+                .addStatement("throw new $T($S + $N)", IllegalStateException.class, "Unknown service index ", INDEX)
+                .unindent()
+                .endControlFlow();
+        return MethodSpec.methodBuilder("build")
+                .addAnnotation(Override.class)
+                .addAnnotation(NonNull.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(Object.class)
+                .addCode(code.build())
+                .build();
+    }
+
+    private MethodSpec createCreateMethod() {
+        CodeBlock.Builder code = CodeBlock.builder().beginControlFlow("switch (index)");
+        for (int i = 0; i < mBuilders.size(); i++) {
+            if (mBuilders.get(i).getScope() != ServiceScope.PROTOTYPE) {
+                code.add("case $L:\n", i).indent()
+                        .addStatement("return $L", mBuilders.get(i).createServiceCode())
+                        .unindent();
+            }
+        }
+        code.add("default:\n").indent()
+                .addStatement("throw new $T($S + index)", IllegalStateException.class, "Unknown service index ")
+                .unindent()
+                .endControlFlow();
+        return MethodSpec.methodBuilder("create")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(TypeName.INT, "index")
+                .returns(Object.class)
+                .addCode(code.build())
+                .build();
+    }
+
+    private MethodSpec createSingletonMethod() {
+        return MethodSpec.methodBuilder("singleton")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(TypeName.INT, "index")
+                .returns(Object.class)
+                .addStatement("$T instance = $N.get(index)", Object.class, INSTANCES)
+                .beginControlFlow("if (instance == null)")
+                .beginControlFlow("synchronized ($N[index])", LOCKS)
+                .addStatement("instance = $N.get(index)", INSTANCES)
+                .beginControlFlow("if (instance == null)")
+                .addStatement("instance = create(index)")
+                .addStatement("$N.set(index, instance)", INSTANCES)
+                .endControlFlow()
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return instance")
+                .build();
+    }
+
+    private MethodSpec createThreadMethod() {
+        return MethodSpec.methodBuilder("thread")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(TypeName.INT, "index")
+                .returns(Object.class)
+                .addStatement("$T[] instances = $N.get()", Object.class, THREAD_INSTANCES)
+                .beginControlFlow("if (instances[index] == null)")
+                .addStatement("instances[index] = create(index)")
+                .endControlFlow()
+                .addStatement("return instances[index]")
+                .build();
+    }
+
+    private MethodSpec createScopeMethod() {
+        CodeBlock.Builder code = CodeBlock.builder().beginControlFlow("switch ($N)", INDEX);
+        for (ServiceScope scope : ServiceScope.values()) {
+            if (scope == ServiceScope.PROTOTYPE) {
+                continue;
+            }
+            boolean hasScope = false;
+            for (int i = 0; i < mBuilders.size(); i++) {
+                if (mBuilders.get(i).getScope() == scope) {
+                    code.add("case $L:\n", i);
+                    hasScope = true;
+                }
+            }
+            if (hasScope) {
+                code.indent().addStatement("return $T.$L", ServiceScope.class, scope.name()).unindent();
+            }
+        }
+        code.add("default:\n").indent()
+                .addStatement("return $T.$L", ServiceScope.class, ServiceScope.PROTOTYPE.name())
+                .unindent()
+                .endControlFlow();
+        return MethodSpec.methodBuilder("getScope")
+                .addAnnotation(Override.class)
+                .addAnnotation(NonNull.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ServiceScope.class)
+                .addCode(code.build())
+                .build();
+    }
+
+    private MethodSpec createPriorityMethod() {
+        CodeBlock.Builder code = CodeBlock.builder().beginControlFlow("switch ($N)", INDEX);
+        for (int i = 0; i < mBuilders.size(); i++) {
+            if (mBuilders.get(i).getPriority() != 0) {
+                code.add("case $L:\n", i).indent()
+                        .addStatement("return $L", mBuilders.get(i).getPriority())
+                        .unindent();
+            }
+        }
+        code.add("default:\n").indent()
+                .addStatement("return 0")
+                .unindent()
+                .endControlFlow();
+        return MethodSpec.methodBuilder("getPriority")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT)
+                .addCode(code.build())
+                .build();
+    }
+
+    private MethodSpec createNameMethod() {
+        CodeBlock.Builder code = CodeBlock.builder().beginControlFlow("switch ($N)", INDEX);
+        for (int i = 0; i < mBuilders.size(); i++) {
+            if (!mBuilders.get(i).getName().isEmpty()) {
+                code.add("case $L:\n", i).indent()
+                        .addStatement("return $S", mBuilders.get(i).getName())
+                        .unindent();
+            }
+        }
+        code.add("default:\n").indent()
+                .addStatement("return null")
+                .unindent()
+                .endControlFlow();
+        return MethodSpec.methodBuilder("getName")
+                .addAnnotation(Override.class)
+                .addAnnotation(Nullable.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .addCode(code.build())
+                .build();
+    }
+
+    private MethodSpec createDependenciesMethod() {
+        TypeName classArrayName = ArrayTypeName.of(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class)));
+        CodeBlock.Builder code = CodeBlock.builder().beginControlFlow("switch ($N)", INDEX);
+        for (int i = 0; i < mBuilders.size(); i++) {
+            if (!mBuilders.get(i).getDependencies().isEmpty()) {
+                code.add("case $L:\n", i).indent()
+                        .addStatement("return $N", DEPENDENCIES + i)
+                        .unindent();
+            }
+        }
+        code.add("default:\n").indent()
+                .addStatement("return super.getDependencies()")
+                .unindent()
+                .endControlFlow();
+        return MethodSpec.methodBuilder("getDependencies")
+                .addAnnotation(Override.class)
+                .addAnnotation(NonNull.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(classArrayName)
+                .addCode(code.build())
+                .build();
+    }
+
+    private MethodSpec createImplementationClassMethod() {
+        CodeBlock.Builder code = CodeBlock.builder().beginControlFlow("switch ($N)", INDEX);
+        for (int i = 0; i < mBuilders.size(); i++) {
+            code.add("case $L:\n", i).indent()
+                    .addStatement("return $T.class", mBuilders.get(i).getServiceName())
+                    .unindent();
+        }
+        code.add("default:\n").indent()
+                .addStatement("return null")
+                .unindent()
+                .endControlFlow();
+        return MethodSpec.methodBuilder("getImplementationClass")
+                .addAnnotation(Override.class)
+                .addAnnotation(Nullable.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class)))
+                .addCode(code.build())
+                .build();
+    }
+}
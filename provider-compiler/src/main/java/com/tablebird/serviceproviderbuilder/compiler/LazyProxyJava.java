@@ -0,0 +1,196 @@
+package com.tablebird.serviceproviderbuilder.compiler;
+
+import androidx.annotation.NonNull;
+
+import com.google.auto.common.MoreElements;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Generated lazy proxy of an service provider interface, named {@code ServiceProviderInterface_LazyProxy}.
+ * Every method of the interface builds the implementation through the service builder on the first
+ * call and delegates to it. The implementation is published by a compare and set, so a race of first
+ * calls may build more than once but all callers delegate to the same implementation.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+final class LazyProxyJava {
+
+    private static final ClassName SERVICE_BUILDER = ClassName.get("com.tablebird.serviceproviderbuilder", "ServiceBuilder");
+    private static final String SUFFIX = "_LazyProxy";
+    private static final String SERVICE_BUILDER_FIELD = "mServiceBuilder";
+    private static final String DELEGATE_FIELD = "mDelegate";
+    private static final String DELEGATE_METHOD = "lazyDelegate";
+
+    private final TypeElement mServiceElement;
+    private final TypeName mServiceName;
+    private final ClassName mProxyClassName;
+    private final List<TypeVariableName> mTypeVariables;
+    private final List<MethodSpec> mMethods;
+
+    private LazyProxyJava(TypeElement serviceElement, TypeName serviceName, ClassName proxyClassName, List<TypeVariableName> typeVariables, List<MethodSpec> methods) {
+        mServiceElement = serviceElement;
+        mServiceName = serviceName;
+        mProxyClassName = proxyClassName;
+        mTypeVariables = typeVariables;
+        mMethods = methods;
+    }
+
+    ClassName getProxyClassName() {
+        return mProxyClassName;
+    }
+
+    JavaFile brewJava() {
+        TypeSpec.Builder builder = TypeSpec.classBuilder(mProxyClassName.simpleName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addOriginatingElement(mServiceElement)
+                .addTypeVariables(mTypeVariables)
+                .addSuperinterface(mServiceName)
+                .addField(FieldSpec.builder(ParameterizedTypeName.get(SERVICE_BUILDER, WildcardTypeName.subtypeOf(Object.class)),
+                        SERVICE_BUILDER_FIELD, Modifier.PRIVATE, Modifier.FINAL).build())
+                .addField(FieldSpec.builder(ParameterizedTypeName.get(AtomicReference.class, Object.class),
+                        DELEGATE_FIELD, Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T<>()", AtomicReference.class)
+                        .build())
+                .addMethod(createConstructorMethod())
+                .addMethod(createDelegateMethod());
+        for (MethodSpec method : mMethods) {
+            builder.addMethod(method);
+        }
+        return JavaFile.builder(mProxyClassName.packageName(), builder.build())
+                .addFileComment("Generated code from Service provider builder. Do not modify!")
+                .build();
+    }
+
+    private MethodSpec createConstructorMethod() {
+        return MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(ParameterSpec.builder(ParameterizedTypeName.get(SERVICE_BUILDER, WildcardTypeName.subtypeOf(Object.class)), "serviceBuilder")
+                        .addAnnotation(NonNull.class)
+                        .build())
+                .addStatement("$N = serviceBuilder", SERVICE_BUILDER_FIELD)
+                .build();
+    }
+
+    private MethodSpec createDelegateMethod() {
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(DELEGATE_METHOD)
+                .addModifiers(Modifier.PRIVATE)
+                .returns(mServiceName);
+        if (!mTypeVariables.isEmpty()) {
+            builder.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                    .addMember("value", "$S", "unchecked")
+                    .build());
+        }
+        return builder.addStatement("$T delegate = $N.get()", Object.class, DELEGATE_FIELD)
+                .beginControlFlow("if (delegate == null)")
+                .addStatement("delegate = $N.build()", SERVICE_BUILDER_FIELD)
+                .beginControlFlow("if (!$N.compareAndSet(null, delegate))", DELEGATE_FIELD)
+                .addStatement("delegate = $N.get()", DELEGATE_FIELD)
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return ($T) delegate", mServiceName)
+                .build();
+    }
+
+    /**
+     * @return lazy proxy of the service provider, or null if the service provider is not an interface
+     */
+    static LazyProxyJava create(TypeElement serviceElement, Elements elements, Types types) {
+        if (!serviceElement.getKind().isInterface() || serviceElement.getModifiers().contains(Modifier.PRIVATE)) {
+            return null;
+        }
+        List<TypeVariableName> typeVariables = new ArrayList<>();
+        for (TypeParameterElement typeParameter : serviceElement.getTypeParameters()) {
+            typeVariables.add(TypeVariableName.get(typeParameter));
+        }
+        TypeName serviceName = TypeName.get(serviceElement.asType());
+
+        DeclaredType serviceType = (DeclaredType) serviceElement.asType();
+        List<MethodSpec> methods = new ArrayList<>();
+        Set<String> signatures = new HashSet<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(serviceElement))) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE)
+                    || !method.getEnclosingElement().getKind().isInterface()) {
+                continue;
+            }
+            MethodSpec delegatingMethod = createDelegatingMethod(method, serviceType, types);
+            // The same method may be inherited from more than one interface
+            if (signatures.add(getSignature(delegatingMethod))) {
+                methods.add(delegatingMethod);
+            }
+        }
+
+        String packageName = MoreElements.getPackage(serviceElement).getQualifiedName().toString();
+        String className = serviceElement.getQualifiedName().toString().substring(
+                packageName.length() + 1).replace('.', '$');
+        ClassName proxyClassName = ClassName.get(packageName, className + SUFFIX);
+        return new LazyProxyJava(serviceElement, serviceName, proxyClassName, typeVariables, methods);
+    }
+
+    private static String getSignature(MethodSpec method) {
+        StringBuilder signature = new StringBuilder(method.name).append('(');
+        for (ParameterSpec parameter : method.parameters) {
+            signature.append(parameter.type).append(',');
+        }
+        return signature.append(')').toString();
+    }
+
+    /**
+     * Override method of the interface as a member of the service type, default methods are delegated too
+     */
+    private static MethodSpec createDelegatingMethod(ExecutableElement method, DeclaredType serviceType, Types types) {
+        ExecutableType executableType = (ExecutableType) types.asMemberOf(serviceType, method);
+        String methodName = method.getSimpleName().toString();
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(methodName)
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.get(executableType.getReturnType()))
+                .varargs(method.isVarArgs());
+        for (TypeParameterElement typeParameter : method.getTypeParameters()) {
+            builder.addTypeVariable(TypeVariableName.get(typeParameter));
+        }
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        List<? extends TypeMirror> parameterTypes = executableType.getParameterTypes();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            String parameterName = method.getParameters().get(i).getSimpleName().toString();
+            builder.addParameter(TypeName.get(parameterTypes.get(i)), parameterName);
+            arguments.add(i == 0 ? "$N" : ", $N", parameterName);
+        }
+        for (TypeMirror thrownType : executableType.getThrownTypes()) {
+            builder.addException(TypeName.get(thrownType));
+        }
+        String statement = executableType.getReturnType().getKind() == TypeKind.VOID ? "$N().$N($L)" : "return $N().$N($L)";
+        return builder.addStatement(statement, DELEGATE_METHOD, methodName, arguments.build())
+                .build();
+    }
+}
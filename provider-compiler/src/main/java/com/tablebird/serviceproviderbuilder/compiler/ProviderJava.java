@@ -0,0 +1,109 @@
+package com.tablebird.serviceproviderbuilder.compiler;
+
+import androidx.annotation.NonNull;
+
+import com.google.auto.common.MoreElements;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+import com.tablebird.serviceproviderbuilder.ServiceProviderPolicy;
+
+import java.util.Arrays;
+
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Generated metadata of an service provider interface, read by runtime instead of the
+ * {@link com.tablebird.serviceproviderbuilder.ServiceProvider} annotation.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+final class ProviderJava {
+
+    private static final ClassName SERVICE_PROVIDER_METADATA = ClassName.get("com.tablebird.serviceproviderbuilder", "ServiceProviderMetadata");
+    private static final ClassName SERVICE_BUILDER = ClassName.get("com.tablebird.serviceproviderbuilder", "ServiceBuilder");
+    private static final String SUFFIX = "_ServiceProvider";
+
+    private final TypeElement mServiceElement;
+    private final TypeName mServiceName;
+    private final ClassName mMetadataClassName;
+    private final ServiceProviderPolicy mPolicy;
+    private final ClassName mLazyProxyClassName;
+
+    private ProviderJava(TypeElement serviceElement, TypeName serviceName, ClassName metadataClassName, ServiceProviderPolicy policy, ClassName lazyProxyClassName) {
+        mServiceElement = serviceElement;
+        mServiceName = serviceName;
+        mMetadataClassName = metadataClassName;
+        mPolicy = policy;
+        mLazyProxyClassName = lazyProxyClassName;
+    }
+
+    ClassName getMetadataClassName() {
+        return mMetadataClassName;
+    }
+
+    JavaFile brewJava() {
+        TypeSpec.Builder builder = TypeSpec.classBuilder(mMetadataClassName.simpleName())
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addOriginatingElement(mServiceElement)
+                .superclass(ParameterizedTypeName.get(SERVICE_PROVIDER_METADATA, mServiceName))
+                .addMethod(createPolicyMethod());
+        if (mLazyProxyClassName != null) {
+            builder.addMethod(createLazyServiceMethod());
+        }
+        return JavaFile.builder(mMetadataClassName.packageName(), builder.build())
+                .addFileComment("Generated code from Service provider builder. Do not modify!")
+                .build();
+    }
+
+    private MethodSpec createPolicyMethod() {
+        return MethodSpec.methodBuilder("getPolicy")
+                .addAnnotation(Override.class)
+                .addAnnotation(NonNull.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ServiceProviderPolicy.class)
+                .addStatement("return $T.$L", ServiceProviderPolicy.class, mPolicy.name())
+                .build();
+    }
+
+    private MethodSpec createLazyServiceMethod() {
+        return MethodSpec.methodBuilder("newLazyService")
+                .addAnnotation(Override.class)
+                .addAnnotation(NonNull.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(mServiceName)
+                .addParameter(ParameterSpec.builder(ParameterizedTypeName.get(SERVICE_BUILDER, WildcardTypeName.subtypeOf(mServiceName)), "serviceBuilder")
+                        .addAnnotation(NonNull.class)
+                        .build())
+                // The proxy of a generic interface is generic too
+                .addStatement(mServiceName instanceof ParameterizedTypeName ? "return new $T<>(serviceBuilder)"
+                        : "return new $T(serviceBuilder)", mLazyProxyClassName)
+                .build();
+    }
+
+    /**
+     * @param lazyProxyClassName class of generated lazy proxy, or null if no proxy is generated
+     */
+    static ProviderJava create(TypeElement serviceElement, ServiceProviderPolicy policy, ClassName lazyProxyClassName) {
+        TypeName serviceName = TypeName.get(serviceElement.asType());
+        if (serviceName instanceof ParameterizedTypeName) {
+            // Wildcard parameterized, a raw type warns in the generated code of consumers compiled with -Werror
+            ParameterizedTypeName parameterizedName = (ParameterizedTypeName) serviceName;
+            TypeName[] wildcards = new TypeName[parameterizedName.typeArguments.size()];
+            Arrays.fill(wildcards, WildcardTypeName.subtypeOf(Object.class));
+            serviceName = ParameterizedTypeName.get(parameterizedName.rawType, wildcards);
+        }
+        String packageName = MoreElements.getPackage(serviceElement).getQualifiedName().toString();
+        String className = serviceElement.getQualifiedName().toString().substring(
+                packageName.length() + 1).replace('.', '$');
+        ClassName metadataClassName = ClassName.get(packageName, className + SUFFIX);
+        return new ProviderJava(serviceElement, serviceName, metadataClassName, policy, lazyProxyClassName);
+    }
+}
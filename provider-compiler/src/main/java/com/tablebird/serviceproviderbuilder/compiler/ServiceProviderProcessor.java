@@ -5,6 +5,7 @@ import com.google.auto.service.AutoService;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.JavaFile;
 import com.tablebird.serviceproviderbuilder.BuildService;
 import com.tablebird.serviceproviderbuilder.ServiceImplementation;
@@ -14,12 +15,19 @@ import com.tablebird.serviceproviderbuilder.ServiceProviderPolicy;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.Filer;
@@ -33,6 +41,7 @@ import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
@@ -47,19 +56,45 @@ import javax.tools.StandardLocation;
 @AutoService(Processor.class)
 public class ServiceProviderProcessor extends AbstractProcessor {
 
+    private static final String OPTION_DEBUG = "debug";
+    /**
+     * Qualified class name of the single service builder generated for all service implementations of
+     * the compilation, instead of a builder per implementation
+     */
+    private static final String OPTION_MODULE_FACTORY = "serviceProviderBuilder.moduleFactory";
+
     private static boolean isDebug = true;
 
     private Messager mMessage;
     private Filer mFiler;
 
     private Multimap<String, String> mProviderInterfaceMap = HashMultimap.create();
+    // Service implementations of each service provider interface, originating elements of its service file
+    private Multimap<String, TypeElement> mProviderOriginatingElements = HashMultimap.create();
+
+    private ClassName mModuleFactoryName;
+    private int mModuleFactoryCount;
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
         mMessage = processingEnv.getMessager();
         mFiler = processingEnv.getFiler();
-        isDebug = processingEnv.getOptions().containsKey("debug");
+        isDebug = processingEnv.getOptions().containsKey(OPTION_DEBUG);
+        String moduleFactory = processingEnv.getOptions().get(OPTION_MODULE_FACTORY);
+        if (moduleFactory != null && !moduleFactory.isEmpty()) {
+            int index = moduleFactory.lastIndexOf('.');
+            mModuleFactoryName = index < 0 ? ClassName.get("", moduleFactory)
+                    : ClassName.get(moduleFactory.substring(0, index), moduleFactory.substring(index + 1));
+        }
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        HashSet<String> options = new HashSet<>();
+        options.add(OPTION_DEBUG);
+        options.add(OPTION_MODULE_FACTORY);
+        return options;
     }
 
     @Override
@@ -72,26 +107,27 @@ public class ServiceProviderProcessor extends AbstractProcessor {
         return false;
     }
 
+    /**
+     * Write the service files and the service index of all service implementations of the compilation.
+     * As an aggregating processor every annotated implementation is processed again by an incremental
+     * compilation, so the files are written from this compilation only instead of merging with the
+     * files of the previous one, and stale entries of removed implementations go with them.
+     */
     private void generateConfigFile() {
         if (mProviderInterfaceMap.isEmpty()) {
             return;
         }
         debug(" providerInterfaceMap : %s ", mProviderInterfaceMap.toString());
+        SortedMap<String, Set<String>> serviceIndex = new TreeMap<>();
         for (String providerInterface : mProviderInterfaceMap.keySet()) {
             debug("Working on service : %s", providerInterface);
             String resourceFile = ServicesFiles.getPath(providerInterface);
-            SortedSet<String> allServices = Sets.newTreeSet();
-            readOldServices(resourceFile, allServices);
-
-            Set<String> newServices = new HashSet<String>(mProviderInterfaceMap.get(providerInterface));
-            if (allServices.containsAll(newServices)) {
-                debug("No new service entries being added.");
-                continue;
-            }
+            SortedSet<String> allServices = Sets.newTreeSet(mProviderInterfaceMap.get(providerInterface));
+            serviceIndex.put(providerInterface, allServices);
             try {
-                allServices.addAll(newServices);
                 debug("New service builder file contents: %s", allServices.toString());
-                FileObject existingFile = mFiler.createResource(StandardLocation.CLASS_OUTPUT, "", resourceFile);
+                FileObject existingFile = mFiler.createResource(StandardLocation.CLASS_OUTPUT, "", resourceFile,
+                        getOriginatingElements(mProviderOriginatingElements.get(providerInterface)));
                 OutputStream outputStream = existingFile.openOutputStream();
                 ServicesFiles.writeServiceFile(allServices, outputStream);
                 outputStream.close();
@@ -100,43 +136,53 @@ public class ServiceProviderProcessor extends AbstractProcessor {
                 error(null, "Unable to create %s , %s", resourceFile, e);
             }
         }
+        generateServiceIndex(serviceIndex);
     }
 
-    private void readOldServices(String resourceFile, SortedSet<String> allServices) {
+    private void generateServiceIndex(SortedMap<String, Set<String>> serviceIndex) {
+        String resourceFile = ServicesFiles.SERVICES_INDEX_PATH;
         try {
-            // would like to be able to print the full path
-            // before we attempt to get the resource in case the behavior
-            // of filer.getResource does change to match the spec, but there's
-            // no good way to resolve CLASS_OUTPUT without first getting a resource.
-            FileObject existingFile = mFiler.getResource(StandardLocation.CLASS_OUTPUT, "",
-                    resourceFile);
-            debug("Looking for existing resource file at " + existingFile.toUri());
-            Set<String> oldServices = ServicesFiles.readServiceFile(existingFile.openInputStream());
-            debug("Existing service entries: " + oldServices);
-            allServices.addAll(oldServices);
+            debug("New service index contents: %s", serviceIndex.toString());
+            FileObject existingFile = mFiler.createResource(StandardLocation.CLASS_OUTPUT, "", resourceFile,
+                    getOriginatingElements(new HashSet<TypeElement>(mProviderOriginatingElements.values())));
+            OutputStream outputStream = existingFile.openOutputStream();
+            ServicesFiles.writeServiceIndex(serviceIndex, outputStream);
+            outputStream.close();
+            debug("Wrote to: %s", existingFile.toUri());
         } catch (IOException e) {
-            // According to the javadoc, Filer.getResource throws an exception
-            // if the file doesn't already exist.  In practice this doesn't
-            // appear to be the case.  Filer.getResource will happily return a
-            // FileObject that refers to a non-existent file but will throw
-            // IOException if you try to open an input stream for it.
-            debug("Resource file did not already exist. %s", e.getMessage());
+            error(null, "Unable to create %s , %s", resourceFile, e);
         }
     }
 
+    private Element[] getOriginatingElements(Collection<TypeElement> elements) {
+        return elements.toArray(new Element[elements.size()]);
+    }
+
     private void processAnnotations(RoundEnvironment roundEnv) {
+        generateProviderMetadata(roundEnv);
+
         Map<TypeElement, BuilderJava> parseService = findAndParseService(roundEnv);
         if (!checkSingleServiceProvider(parseService)) {
             return;
         }
+        if (!checkDuplicateName(parseService)) {
+            return;
+        }
+        if (!checkDependencyCycle(parseService)) {
+            return;
+        }
 
+        if (mModuleFactoryName != null) {
+            generateModuleFactory(parseService);
+            return;
+        }
         for (Map.Entry<TypeElement, BuilderJava> elementBuilderEntry : parseService.entrySet()) {
             TypeElement typeElement = elementBuilderEntry.getKey();
             BuilderJava builder = elementBuilderEntry.getValue();
-            Set<TypeElement> serviceInterfaces = getProviderInterfaces(typeElement);
-            for (TypeElement serviceInterface : serviceInterfaces) {
+            for (TypeElement serviceInterface : builder.getServiceProviderElements()) {
                 String serviceName = getClassName(serviceInterface);
                 mProviderInterfaceMap.put(serviceName, builder.getBuilderClassName().reflectionName());
+                mProviderOriginatingElements.put(serviceName, typeElement);
             }
             JavaFile javaFile = builder.brewJava();
             try {
@@ -147,12 +193,74 @@ public class ServiceProviderProcessor extends AbstractProcessor {
         }
     }
 
+    private void generateModuleFactory(Map<TypeElement, BuilderJava> parseService) {
+        if (parseService.isEmpty()) {
+            return;
+        }
+        // Stable indexes, a later round gets a factory of its own
+        List<TypeElement> typeElements = new ArrayList<>(parseService.keySet());
+        Collections.sort(typeElements, new Comparator<TypeElement>() {
+            @Override
+            public int compare(TypeElement o1, TypeElement o2) {
+                return o1.getQualifiedName().toString().compareTo(o2.getQualifiedName().toString());
+            }
+        });
+        List<BuilderJava> builders = new ArrayList<>(typeElements.size());
+        for (TypeElement typeElement : typeElements) {
+            builders.add(parseService.get(typeElement));
+        }
+        ClassName factoryName = mModuleFactoryCount == 0 ? mModuleFactoryName
+                : mModuleFactoryName.peerClass(mModuleFactoryName.simpleName() + mModuleFactoryCount);
+        mModuleFactoryCount++;
+        FactoryJava factory = new FactoryJava(factoryName, builders);
+        for (int i = 0; i < builders.size(); i++) {
+            for (TypeElement serviceInterface : builders.get(i).getServiceProviderElements()) {
+                String serviceName = getClassName(serviceInterface);
+                mProviderInterfaceMap.put(serviceName, factory.getBuilderName(i));
+                mProviderOriginatingElements.put(serviceName, typeElements.get(i));
+            }
+        }
+        debug("Generate module service factory %s", factoryName);
+        try {
+            factory.brewJava().writeTo(mFiler);
+        } catch (IOException e) {
+            error(null, "Unable to write module service factory %s: %s", factoryName, e.getMessage());
+        }
+    }
+
+    private void generateProviderMetadata(RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(ServiceProvider.class)) {
+            if (!(element instanceof TypeElement)) {
+                continue;
+            }
+            TypeElement typeElement = (TypeElement) element;
+            LazyProxyJava lazyProxyJava = LazyProxyJava.create(typeElement, processingEnv.getElementUtils(), processingEnv.getTypeUtils());
+            if (lazyProxyJava != null) {
+                debug(typeElement, "Generate service provider lazy proxy %s", lazyProxyJava.getProxyClassName());
+                try {
+                    lazyProxyJava.brewJava().writeTo(mFiler);
+                } catch (IOException e) {
+                    error(typeElement, "Unable to write lazy proxy for type %s: %s", typeElement, e.getMessage());
+                    lazyProxyJava = null;
+                }
+            }
+            ProviderJava providerJava = ProviderJava.create(typeElement, getProviderPolicy(typeElement),
+                    lazyProxyJava != null ? lazyProxyJava.getProxyClassName() : null);
+            debug(typeElement, "Generate service provider metadata %s", providerJava.getMetadataClassName());
+            JavaFile javaFile = providerJava.brewJava();
+            try {
+                javaFile.writeTo(mFiler);
+            } catch (IOException e) {
+                error(typeElement, "Unable to write metadata for type %s: %s", typeElement, e.getMessage());
+            }
+        }
+    }
+
     private boolean checkSingleServiceProvider(Map<TypeElement, BuilderJava> parseService) {
         Multimap<TypeElement, TypeElement> elementMultimap = HashMultimap.create();
-        for (TypeElement typeElement : parseService.keySet()) {
-            Set<TypeElement> serviceInterfaces = getProviderInterfaces(typeElement);
-            for (TypeElement serviceInterface : serviceInterfaces) {
-                elementMultimap.put(serviceInterface, typeElement);
+        for (Map.Entry<TypeElement, BuilderJava> elementBuilderEntry : parseService.entrySet()) {
+            for (TypeElement serviceInterface : elementBuilderEntry.getValue().getServiceProviderElements()) {
+                elementMultimap.put(serviceInterface, elementBuilderEntry.getKey());
             }
         }
         for (TypeElement serviceInterface : elementMultimap.keySet()) {
@@ -170,16 +278,39 @@ public class ServiceProviderProcessor extends AbstractProcessor {
         return true;
     }
 
+    private boolean checkDuplicateName(Map<TypeElement, BuilderJava> parseService) {
+        // Implementation of each name, by service interface name and implementation name
+        Map<String, TypeElement> namedImplementations = new HashMap<>();
+        boolean result = true;
+        for (Map.Entry<TypeElement, BuilderJava> elementBuilderEntry : parseService.entrySet()) {
+            String name = elementBuilderEntry.getValue().getName();
+            if (name.isEmpty()) {
+                continue;
+            }
+            TypeElement typeElement = elementBuilderEntry.getKey();
+            for (TypeElement serviceInterface : elementBuilderEntry.getValue().getServiceProviderElements()) {
+                String serviceName = getClassName(serviceInterface);
+                TypeElement other = namedImplementations.put(serviceName + ":" + name, typeElement);
+                if (other != null) {
+                    error(typeElement, "%s implementations %s and %s have same name %s", serviceName,
+                            other.getSimpleName(), typeElement.getSimpleName(), name);
+                    result = false;
+                }
+            }
+        }
+        return result;
+    }
+
     private Map<TypeElement, BuilderJava> findAndParseService(RoundEnvironment roundEnv) {
-        Map<TypeElement, BuilderJava> typeElementServiceMap = new HashMap<>();
+        Map<TypeElement, BuilderJava> typeElementServiceMap = new LinkedHashMap<>();
         for (Element element : roundEnv.getElementsAnnotatedWith(ServiceImplementation.class)) {
             TypeElement typeElement = (TypeElement) element;
             if (typeElement.getModifiers().contains(Modifier.PRIVATE)) {
                 error(typeElement, "%s can't be private ", ServiceImplementation.class.getSimpleName());
                 throw new RuntimeException("ServiceImplementation can't be private");
             }
-            HashSet<Element> serviceProviderElements = new HashSet<>();
-            if (!checkInterfaces(serviceProviderElements, typeElement)) {
+            Set<TypeElement> serviceProviderElements = getProviderInterfaces(typeElement);
+            if (serviceProviderElements.isEmpty()) {
                 warning(typeElement, "%s not implement annotated %s interfaces", ServiceImplementation.class.getSimpleName(), ServiceProvider.class.getSimpleName());
                 continue;
             }
@@ -190,20 +321,27 @@ public class ServiceProviderProcessor extends AbstractProcessor {
         return typeElementServiceMap;
     }
 
-    private boolean parseBuilderService(Map<TypeElement, BuilderJava> typeElementServiceMap, HashSet<Element> serviceProviderElements, TypeElement typeElement) {
+    private boolean parseBuilderService(Map<TypeElement, BuilderJava> typeElementServiceMap, Set<TypeElement> serviceProviderElements, TypeElement typeElement) {
         List<? extends Element> enclosedElements = typeElement.getEnclosedElements();
         if (enclosedElements == null) {
             return false;
         }
-        Element builderElement = null;
+        ExecutableElement builderElement = null;
         boolean canBuilderConstructor = false;
+        ExecutableElement injectConstructor = null;
+        boolean ambiguousConstructor = false;
         for (Element element : enclosedElements) {
             if (element instanceof ExecutableElement) {
                 ExecutableElement executableElement = (ExecutableElement) element;
                 if (element.getKind() == ElementKind.CONSTRUCTOR) {
-                    if (!element.getModifiers().contains(Modifier.PRIVATE)
-                            && (executableElement.getParameters() == null || executableElement.getParameters().size() == 0)) {
+                    if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                        continue;
+                    }
+                    if (executableElement.getParameters() == null || executableElement.getParameters().size() == 0) {
                         canBuilderConstructor = true;
+                    } else if (getDependencies(executableElement) != null) {
+                        ambiguousConstructor |= injectConstructor != null;
+                        injectConstructor = executableElement;
                     }
                     continue;
                 }
@@ -221,24 +359,103 @@ public class ServiceProviderProcessor extends AbstractProcessor {
                 builderElement = executableElement;
             }
         }
-        if (builderElement == null && !canBuilderConstructor) {
+        if (builderElement == null && !canBuilderConstructor && injectConstructor == null) {
             error(typeElement, "%s can not builder", ServiceImplementation.class.getSimpleName());
             return false;
         }
+        if (builderElement == null && !canBuilderConstructor && ambiguousConstructor) {
+            error(typeElement, "%s has more than one constructor of %s parameters",
+                    ServiceImplementation.class.getSimpleName(), ServiceProvider.class.getSimpleName());
+            return false;
+        }
         BuilderJava.Builder builder = BuilderJava.newBuilder(typeElement, serviceProviderElements);
+        ServiceImplementation serviceImplementation = typeElement.getAnnotation(ServiceImplementation.class);
+        builder.setScope(serviceImplementation.scope());
+        builder.setPriority(serviceImplementation.priority());
+        builder.setName(serviceImplementation.name());
         if (builderElement != null) {
             builder.setConstructor(false);
             builder.setMethod(builderElement.getSimpleName().toString());
+            builder.setDependencies(getDependencies(builderElement));
         } else {
             builder.setConstructor(true);
+            if (!canBuilderConstructor) {
+                builder.setDependencies(getDependencies(injectConstructor));
+            }
         }
         typeElementServiceMap.put(typeElement, builder.build());
         return true;
     }
 
+    /**
+     * @return service providers of the parameters, or null if a parameter is not a service provider
+     */
+    private List<ClassName> getDependencies(ExecutableElement executableElement) {
+        List<ClassName> dependencies = new ArrayList<>();
+        for (VariableElement parameter : executableElement.getParameters()) {
+            TypeMirror parameterType = parameter.asType();
+            if (parameterType.getKind() != TypeKind.DECLARED) {
+                return null;
+            }
+            TypeElement parameterElement = (TypeElement) ((DeclaredType) parameterType).asElement();
+            if (parameterElement.getAnnotation(ServiceProvider.class) == null) {
+                return null;
+            }
+            dependencies.add(ClassName.get(parameterElement));
+        }
+        return dependencies;
+    }
+
+    /**
+     * Find dependency cycles among the service implementations of this compilation, cycles across
+     * modules are found by the runtime
+     */
+    private boolean checkDependencyCycle(Map<TypeElement, BuilderJava> parseService) {
+        Multimap<String, TypeElement> implementations = HashMultimap.create();
+        for (Map.Entry<TypeElement, BuilderJava> elementBuilderEntry : parseService.entrySet()) {
+            for (TypeElement serviceInterface : elementBuilderEntry.getValue().getServiceProviderElements()) {
+                implementations.put(ClassName.get(serviceInterface).reflectionName(), elementBuilderEntry.getKey());
+            }
+        }
+        Set<TypeElement> visited = new HashSet<>();
+        for (TypeElement typeElement : parseService.keySet()) {
+            if (!checkDependencyCycle(typeElement, parseService, implementations, new ArrayList<TypeElement>(), visited)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean checkDependencyCycle(TypeElement typeElement, Map<TypeElement, BuilderJava> parseService,
+                                         Multimap<String, TypeElement> implementations, List<TypeElement> path,
+                                         Set<TypeElement> visited) {
+        int index = path.indexOf(typeElement);
+        if (index >= 0) {
+            StringBuilder cycle = new StringBuilder();
+            for (TypeElement element : path.subList(index, path.size())) {
+                cycle.append(element.getSimpleName()).append(" -> ");
+            }
+            error(typeElement, "Dependency cycle %s%s", cycle, typeElement.getSimpleName());
+            return false;
+        }
+        if (!visited.add(typeElement)) {
+            return true;
+        }
+        path.add(typeElement);
+        for (ClassName dependency : parseService.get(typeElement).getDependencies()) {
+            for (TypeElement implementation : implementations.get(dependency.reflectionName())) {
+                if (!checkDependencyCycle(implementation, parseService, implementations, path, visited)) {
+                    return false;
+                }
+            }
+        }
+        path.remove(path.size() - 1);
+        return true;
+    }
+
     private boolean checkBuilderService(TypeElement typeElement, ExecutableElement executableElement) {
-        if (executableElement.getParameters() != null && executableElement.getParameters().size() > 0) {
-            error(executableElement, "%s method parameters not empty", BuildService.class.getSimpleName());
+        if (getDependencies(executableElement) == null) {
+            error(executableElement, "%s method parameters not all %s", BuildService.class.getSimpleName(), ServiceProvider.class.getSimpleName());
             return false;
         }
         if (executableElement.getReturnType() != typeElement.asType()) {
@@ -257,26 +474,6 @@ public class ServiceProviderProcessor extends AbstractProcessor {
         return true;
     }
 
-    private boolean checkInterfaces(HashSet<Element> serviceProviders, TypeElement typeElement) {
-        List<? extends TypeMirror> typeElementInterfaces = typeElement.getInterfaces();
-        if (typeElementInterfaces == null) {
-            return false;
-        }
-        for (TypeMirror typeMirror : typeElementInterfaces) {
-            if (typeMirror.getKind() == TypeKind.DECLARED) {
-                if (typeMirror instanceof DeclaredType) {
-                    Element asElement = ((DeclaredType) typeMirror).asElement();
-                    ServiceProvider serviceProvider = asElement.getAnnotation(ServiceProvider.class);
-                    if (serviceProvider != null) {
-                        serviceProviders.add(asElement);
-                    }
-                }
-            }
-        }
-        debug("%s implementation provider %s", typeElement.getQualifiedName(), serviceProviders.toString());
-        return !serviceProviders.isEmpty();
-    }
-
     private Set<TypeElement> getProviderInterfaces(TypeElement typeElement) {
         List<? extends TypeMirror> typeElementInterfaces = typeElement.getInterfaces();
         Set<TypeElement> set = new HashSet<>();
@@ -292,6 +489,7 @@ public class ServiceProviderProcessor extends AbstractProcessor {
                 }
             }
         }
+        debug("%s implementation provider %s", typeElement.getQualifiedName(), set.toString());
         return set;
     }
 
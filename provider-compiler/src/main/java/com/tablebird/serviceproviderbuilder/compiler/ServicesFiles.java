@@ -1,11 +1,13 @@
 package com.tablebird.serviceproviderbuilder.compiler;
 
-import com.google.common.io.Closer;
-
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.zip.CRC32;
 
 import static com.google.common.base.Charsets.UTF_8;
 
@@ -17,6 +19,28 @@ final class ServicesFiles {
 
     public static final String SERVICES_PATH = "META-INF/services/builder";
 
+    /**
+     * First line of a service file, followed by the hex CRC32 of the content after that line.
+     */
+    static final String GENERATED_HEADER = "# Generated by service provider builder, crc32=";
+
+    /**
+     * Binary index of all services of an artifact, read once per class loader instead of a service file
+     * per service. Layout, all integers big-endian:
+     * <pre>
+     *     u4 magic "SPBI", u2 version, u4 length of the rest
+     *     u4 service count, u4 builder reference count, u4 string count
+     *     service count * (u4 service name string, u4 first builder reference, u4 builder count)
+     *     builder reference count * u4 builder name string
+     *     (string count + 1) * u4 string offset in string data
+     *     string data, UTF-8
+     * </pre>
+     * Several indexes may be concatenated when artifacts are merged, the reader skips anything between them.
+     */
+    public static final String SERVICES_INDEX_PATH = "META-INF/services/builder.index";
+    private static final int INDEX_MAGIC = 0x53504249;
+    private static final int INDEX_VERSION = 1;
+
     private ServicesFiles() { }
 
     /**
@@ -31,51 +55,85 @@ final class ServicesFiles {
     }
 
     /**
-     * Reads the set of service classes from a service file.
+     * Writes the set of service class names to a service file. The file starts with a
+     * {@link #GENERATED_HEADER} comment holding the CRC32 of the rest, so the runtime can
+     * trust the content without validating every name.
      *
-     * @param input not {@code null}. Closed after use.
-     * @return a not {@code null Set} of service class names.
+     * @param output not {@code null}. Not closed after use.
+     * @param services a not {@code null Collection} of service class names.
      * @throws IOException
      */
-    static Set<String> readServiceFile(InputStream input) throws IOException {
-        HashSet<String> serviceClasses = new HashSet<String>();
-        Closer closer = Closer.create();
-        try {
-            // TODO(gak): use CharStreams
-            BufferedReader r = closer.register(new BufferedReader(new InputStreamReader(input, UTF_8)));
-            String line;
-            while ((line = r.readLine()) != null) {
-                int commentStart = line.indexOf('#');
-                if (commentStart >= 0) {
-                    line = line.substring(0, commentStart);
-                }
-                line = line.trim();
-                if (!line.isEmpty()) {
-                    serviceClasses.add(line);
-                }
-            }
-            return serviceClasses;
-        } catch (Throwable t) {
-            throw closer.rethrow(t);
-        } finally {
-            closer.close();
+    static void writeServiceFile(Collection<String> services, OutputStream output)
+            throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (String service : services) {
+            content.write(service.getBytes(UTF_8));
+            content.write('\n');
         }
+        CRC32 crc = new CRC32();
+        crc.update(content.toByteArray());
+        output.write(String.format("%s%08x\n", GENERATED_HEADER, crc.getValue()).getBytes(UTF_8));
+        content.writeTo(output);
+        output.flush();
     }
 
     /**
-     * Writes the set of service class names to a service file.
+     * Writes the services to a service index file.
      *
      * @param output not {@code null}. Not closed after use.
-     * @param services a not {@code null Collection} of service class names.
+     * @param services a not {@code null Map} of service name to service builder class names.
      * @throws IOException
      */
-    static void writeServiceFile(Collection<String> services, OutputStream output)
+    static void writeServiceIndex(SortedMap<String, ? extends Collection<String>> services, OutputStream output)
             throws IOException {
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
-        for (String service : services) {
-            writer.write(service);
-            writer.newLine();
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        List<Integer> builders = new ArrayList<Integer>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream bodyOutput = new DataOutputStream(body);
+        bodyOutput.writeInt(services.size());
+        int builderCount = 0;
+        for (Collection<String> serviceBuilders : services.values()) {
+            builderCount += serviceBuilders.size();
+        }
+        bodyOutput.writeInt(builderCount);
+        for (Map.Entry<String, ? extends Collection<String>> entry : services.entrySet()) {
+            stringIndex(strings, entry.getKey());
+            for (String builder : entry.getValue()) {
+                stringIndex(strings, builder);
+            }
+        }
+        bodyOutput.writeInt(strings.size());
+        for (Map.Entry<String, ? extends Collection<String>> entry : services.entrySet()) {
+            bodyOutput.writeInt(strings.get(entry.getKey()));
+            bodyOutput.writeInt(builders.size());
+            bodyOutput.writeInt(entry.getValue().size());
+            for (String builder : entry.getValue()) {
+                builders.add(strings.get(builder));
+            }
+        }
+        for (Integer builder : builders) {
+            bodyOutput.writeInt(builder);
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (String string : strings.keySet()) {
+            bodyOutput.writeInt(data.size());
+            data.write(string.getBytes(UTF_8));
+        }
+        bodyOutput.writeInt(data.size());
+        data.writeTo(bodyOutput);
+        bodyOutput.flush();
+
+        DataOutputStream dataOutput = new DataOutputStream(output);
+        dataOutput.writeInt(INDEX_MAGIC);
+        dataOutput.writeShort(INDEX_VERSION);
+        dataOutput.writeInt(body.size());
+        body.writeTo(dataOutput);
+        dataOutput.flush();
+    }
+
+    private static void stringIndex(Map<String, Integer> strings, String string) {
+        if (!strings.containsKey(string)) {
+            strings.put(string, strings.size());
         }
-        writer.flush();
     }
 }
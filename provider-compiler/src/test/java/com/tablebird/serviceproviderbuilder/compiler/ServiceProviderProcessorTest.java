@@ -0,0 +1,473 @@
+package com.tablebird.serviceproviderbuilder.compiler;
+
+import com.tablebird.serviceproviderbuilder.AbstractServiceBuilder;
+import com.tablebird.serviceproviderbuilder.BuilderInstantiationException;
+import com.tablebird.serviceproviderbuilder.ServiceProviderBuilder;
+import com.tablebird.serviceproviderbuilder.ServiceScope;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Scanner;
+import java.util.ServiceConfigurationError;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public class ServiceProviderProcessorTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final ClassLoader mContextClassLoader = Thread.currentThread().getContextClassLoader();
+
+    private static final JavaFileObject IA = TestCompiler.source("test.IA",
+            "package test;",
+            "import com.tablebird.serviceproviderbuilder.ServiceProvider;",
+            "@ServiceProvider public interface IA { IB b(); }");
+
+    private static final JavaFileObject IB = TestCompiler.source("test.IB",
+            "package test;",
+            "import com.tablebird.serviceproviderbuilder.ServiceProvider;",
+            "@ServiceProvider public interface IB { }");
+
+    @After
+    public void restoreContextClassLoader() {
+        Thread.currentThread().setContextClassLoader(mContextClassLoader);
+    }
+
+    // Services looked up by the compiled sources without a class loader use the context class loader
+    private static ClassLoader classLoader(File... modules) throws Exception {
+        ClassLoader loader = TestCompiler.classLoader(modules);
+        Thread.currentThread().setContextClassLoader(loader);
+        return loader;
+    }
+
+    @Test
+    public void injectDependenciesOfOtherModules() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        File api = compiler.compile(IA, IB);
+        File b = compiler.compile(Collections.singletonList(api), TestCompiler.source("test.B",
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.*;",
+                "@ServiceImplementation(scope = ServiceScope.SINGLETON)",
+                "public class B implements IB { }"));
+        File a = compiler.compile(Collections.singletonList(api), TestCompiler.source("test.A",
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.*;",
+                "@ServiceImplementation public class A implements IA {",
+                "  private final IB mB;",
+                "  public A(IB b) { mB = b; }",
+                "  @Override public IB b() { return mB; }",
+                "}"));
+        // Dependencies are looked up with the class loader of A, not the context class loader
+        ClassLoader loader = TestCompiler.classLoader(api, a, b);
+        Class<?> service = loader.loadClass("test.IA");
+
+        Object first = ServiceProviderBuilder.buildHighestPriorityService(service, loader);
+        Object second = ServiceProviderBuilder.buildHighestPriorityService(service, loader);
+
+        assertEquals("test.A", first.getClass().getName());
+        assertTrue(first != second);
+        Object dependency = service.getMethod("b").invoke(first);
+        assertEquals("test.B", dependency.getClass().getName());
+        assertSame(dependency, service.getMethod("b").invoke(second));
+    }
+
+    @Test
+    public void reportSingletonCycleAcrossModulesOnEveryBuild() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        File api = compiler.compile(IA, IB);
+        File a = compiler.compile(Collections.singletonList(api), TestCompiler.source("test.A",
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.*;",
+                "@ServiceImplementation(scope = ServiceScope.SINGLETON)",
+                "public class A implements IA {",
+                "  private final IB mB;",
+                "  public A(IB b) { mB = b; }",
+                "  @Override public IB b() { return mB; }",
+                "}"));
+        File b = compiler.compile(Collections.singletonList(api), TestCompiler.source("test.B",
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.*;",
+                "@ServiceImplementation(scope = ServiceScope.SINGLETON)",
+                "public class B implements IB { public B(IA a) { } }"));
+        ClassLoader loader = classLoader(api, a, b);
+        Class<?> service = loader.loadClass("test.IA");
+
+        // A failed singleton build must neither poison the builder class nor be cached
+        for (int i = 0; i < 2; i++) {
+            try {
+                ServiceProviderBuilder.buildHighestPriorityService(service, loader);
+                fail("Dependency cycle not detected");
+            } catch (BuilderInstantiationException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("IA -> IB -> IA"));
+            }
+        }
+    }
+
+    @Test
+    public void injectDependenciesOfBuildService() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        File module = compiler.compile(IA, IB, scopedImplementation("B", null), TestCompiler.source("test.A",
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.*;",
+                "@ServiceImplementation class A implements IA {",
+                "  private final IB mB;",
+                "  private A(IB b) { mB = b; }",
+                "  @BuildService static A create(IB b) { return new A(b); }",
+                "  @Override public IB b() { return mB; }",
+                "}"));
+        ClassLoader loader = classLoader(module);
+        Class<?> service = loader.loadClass("test.IA");
+
+        Object built = ServiceProviderBuilder.buildHighestPriorityService(service, loader);
+
+        assertEquals("test.B", service.getMethod("b").invoke(built).getClass().getName());
+    }
+
+    @Test
+    public void reportDependencyCycleInOneCompilation() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = new TestCompiler(mFolder).compile(mFolder.newFolder(),
+                Collections.<File>emptyList(), IA, IB,
+                TestCompiler.source("test.A",
+                        "package test;",
+                        "import com.tablebird.serviceproviderbuilder.*;",
+                        "@ServiceImplementation public class A implements IA {",
+                        "  public A(IB b) { }",
+                        "  @Override public IB b() { return null; }",
+                        "}"),
+                TestCompiler.source("test.B",
+                        "package test;",
+                        "import com.tablebird.serviceproviderbuilder.*;",
+                        "@ServiceImplementation public class B implements IB { public B(IA a) { } }"));
+
+        assertEquals(errors.toString(), 1, errors.size());
+        assertEquals("Dependency cycle A -> B -> A", errors.get(0).getMessage(Locale.ROOT));
+    }
+
+    @Test
+    public void rejectBuildServiceOfOtherParameters() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = new TestCompiler(mFolder).compile(mFolder.newFolder(),
+                Collections.<File>emptyList(), IB, TestCompiler.source("test.B",
+                        "package test;",
+                        "import com.tablebird.serviceproviderbuilder.*;",
+                        "@ServiceImplementation class B implements IB {",
+                        "  @BuildService static B create(String name) { return new B(); }",
+                        "}"));
+
+        assertEquals(errors.toString(), 1, errors.size());
+        assertEquals("BuildService method parameters not all ServiceProvider", errors.get(0).getMessage(Locale.ROOT));
+    }
+
+    @Test
+    public void registerAsAggregatingProcessor() throws Exception {
+        URL registration = getClass().getClassLoader().getResource("META-INF/gradle/incremental.annotation.processors");
+        assertNotNull(registration);
+        try (InputStream input = registration.openStream()) {
+            String content = new Scanner(input, "UTF-8").useDelimiter("\\A").next().trim();
+            assertEquals(ServiceProviderProcessor.class.getName() + ",aggregating", content);
+        }
+    }
+
+    @Test
+    public void dropEntriesOfDeletedImplementations() throws Exception {
+        File output = mFolder.newFolder();
+        TestCompiler compiler = new TestCompiler(mFolder);
+        assertTrue(compiler.compile(output, Collections.<File>emptyList(),
+                IB, scopedImplementation("Kept", null), scopedImplementation("Deleted", null)).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("test.Kept", "test.Deleted")),
+                new HashSet<>(buildServiceNames(classLoader(output))));
+
+        // Gradle reprocesses all sources of an aggregating processor into the output of the previous build,
+        // the classes of the deleted implementation are left in place here to catch a stale entry
+        assertTrue(compiler.compile(output, Collections.<File>emptyList(), IB, scopedImplementation("Kept", null))
+                .isEmpty());
+
+        assertTrue(new File(output, "test/Deleted_Builder.class").isFile());
+        assertEquals(Collections.singletonList("test.Kept"), buildServiceNames(classLoader(output)));
+        String serviceFile = new String(Files.readAllBytes(new File(output, ServicesFiles.getPath("test.IB")).toPath()),
+                "UTF-8");
+        assertFalse(serviceFile, serviceFile.contains("Deleted"));
+    }
+
+    @Test
+    public void singletonIsBuiltOnce() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        File module = compiler.compile(Collections.<File>emptyList(), IB, TestCompiler.source("test.B",
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.*;",
+                "@ServiceImplementation(scope = ServiceScope.SINGLETON)",
+                "public class B implements IB { }"));
+        ClassLoader loader = classLoader(module);
+        Class<?> service = loader.loadClass("test.IB");
+
+        Object[] services = ServiceProviderBuilder.buildServiceArray(service, loader);
+        assertEquals(Arrays.asList(services).toString(), 1, services.length);
+        assertSame(services[0], ServiceProviderBuilder.buildHighestPriorityService(service, loader));
+    }
+
+    @Test
+    public void buildSingletonsOfCrossDependentFactoriesConcurrently() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        // Both singletons are in construction when they look up the singleton of the other factory
+        File api = compiler.compile(IA, IB, TestCompiler.source("test.IC",
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.ServiceProvider;",
+                "@ServiceProvider public interface IC { }"), TestCompiler.source("test.ID",
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.ServiceProvider;",
+                "@ServiceProvider public interface ID { }"), TestCompiler.source("test.Barrier",
+                "package test;",
+                "import java.util.concurrent.*;",
+                "public final class Barrier {",
+                "  private static final CyclicBarrier BARRIER = new CyclicBarrier(2);",
+                "  public static void await() {",
+                "    try { BARRIER.await(10, TimeUnit.SECONDS); } catch (Exception e) { throw new IllegalStateException(e); }",
+                "  }",
+                "}"));
+        File first = new TestCompiler(mFolder)
+                .withOptions("-AserviceProviderBuilder.moduleFactory=test.FirstFactory")
+                .compile(Collections.singletonList(api), TestCompiler.source("test.A",
+                        "package test;",
+                        "import com.tablebird.serviceproviderbuilder.*;",
+                        "@ServiceImplementation(scope = ServiceScope.SINGLETON)",
+                        "public class A implements IA {",
+                        "  public A() { Barrier.await(); ServiceProviderBuilder.buildHighestPriorityService(IC.class); }",
+                        "  @Override public IB b() { return null; }",
+                        "}"), TestCompiler.source("test.B",
+                        "package test;",
+                        "import com.tablebird.serviceproviderbuilder.*;",
+                        "@ServiceImplementation(scope = ServiceScope.SINGLETON)",
+                        "public class B implements IB { }"));
+        File second = new TestCompiler(mFolder)
+                .withOptions("-AserviceProviderBuilder.moduleFactory=test.SecondFactory")
+                .compile(Collections.singletonList(api), TestCompiler.source("test.C",
+                        "package test;",
+                        "import com.tablebird.serviceproviderbuilder.*;",
+                        "@ServiceImplementation(scope = ServiceScope.SINGLETON)",
+                        "public class C implements IC { }"), TestCompiler.source("test.D",
+                        "package test;",
+                        "import com.tablebird.serviceproviderbuilder.*;",
+                        "@ServiceImplementation(scope = ServiceScope.SINGLETON)",
+                        "public class D implements ID {",
+                        "  public D() { Barrier.await(); ServiceProviderBuilder.buildHighestPriorityService(IB.class); }",
+                        "}"));
+        ClassLoader loader = classLoader(api, first, second);
+
+        FutureTask<Object> a = buildOnDaemonThread(loader.loadClass("test.IA"), loader);
+        FutureTask<Object> d = buildOnDaemonThread(loader.loadClass("test.ID"), loader);
+
+        assertEquals("test.A", a.get(10, TimeUnit.SECONDS).getClass().getName());
+        assertEquals("test.D", d.get(10, TimeUnit.SECONDS).getClass().getName());
+    }
+
+    @Test
+    public void buildInstancesOfEachScope() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        File module = compiler.compile(IB,
+                scopedImplementation("Prototype", null),
+                scopedImplementation("Singleton", ServiceScope.SINGLETON),
+                scopedImplementation("Thread", ServiceScope.THREAD));
+        final ClassLoader loader = classLoader(module);
+
+        for (ServiceScope scope : ServiceScope.values()) {
+            String implementation = "test." + scope.name().charAt(0) + scope.name().substring(1).toLowerCase();
+            Class<?> builderClass = loader.loadClass(implementation + "_Builder");
+            AbstractServiceBuilder<?> serviceBuilder = (AbstractServiceBuilder<?>) builderClass.newInstance();
+            assertEquals(scope, serviceBuilder.getScope());
+            assertEquals(implementation, serviceBuilder.getImplementationClass().getName());
+        }
+        assertNotSame(build(loader, "test.Prototype_Builder"), build(loader, "test.Prototype_Builder"));
+        Object singleton = build(loader, "test.Singleton_Builder");
+        assertSame(singleton, build(loader, "test.Singleton_Builder"));
+        assertSame(singleton, buildOnOtherThread(loader, "test.Singleton_Builder"));
+        Object thread = build(loader, "test.Thread_Builder");
+        assertSame(thread, build(loader, "test.Thread_Builder"));
+        Object otherThread = buildOnOtherThread(loader, "test.Thread_Builder");
+        assertNotSame(thread, otherThread);
+        assertEquals("test.Thread", otherThread.getClass().getName());
+    }
+
+    @Test
+    public void readIndexOrServiceFileWrittenByProcessor() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        JavaFileObject implementation = scopedImplementation("B", null);
+        File indexOnly = compiler.compile(IB, implementation);
+        File serviceFileOnly = compiler.compile(IB, implementation);
+        File serviceFile = new File(indexOnly, ServicesFiles.getPath("test.IB"));
+        File index = new File(serviceFileOnly, ServicesFiles.SERVICES_INDEX_PATH);
+        assertTrue(serviceFile.delete());
+        assertTrue(index.delete());
+
+        for (File module : Arrays.asList(indexOnly, serviceFileOnly)) {
+            ClassLoader loader = classLoader(module);
+            Object[] services = ServiceProviderBuilder.buildServiceArray(loader.loadClass("test.IB"), loader);
+            assertEquals(1, services.length);
+            assertEquals("test.B", services[0].getClass().getName());
+        }
+    }
+
+    @Test
+    public void buildInStablePriorityOrder() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        File api = compiler.compile(IB);
+        File first = compiler.compile(Collections.singletonList(api),
+                prioritizedImplementation("Low", -1), prioritizedImplementation("First", 0));
+        File second = compiler.compile(Collections.singletonList(api),
+                prioritizedImplementation("Second", 0), prioritizedImplementation("High", 10));
+
+        // Implementations of the same priority keep the class path order
+        assertEquals(Arrays.asList("test.High", "test.First", "test.Second", "test.Low"),
+                buildServiceNames(classLoader(api, first, second)));
+        assertEquals(Arrays.asList("test.High", "test.Second", "test.First", "test.Low"),
+                buildServiceNames(classLoader(api, second, first)));
+    }
+
+    @Test
+    public void buildImplementationByName() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        File api = compiler.compile(IB);
+        File module = compiler.compile(Collections.singletonList(api), namedImplementation("Mp4", "mp4", 0),
+                namedImplementation("Avi", "avi", 0), prioritizedImplementation("Unnamed", 0));
+        File factoryModule = new TestCompiler(mFolder)
+                .withOptions("-AserviceProviderBuilder.moduleFactory=test.ModuleFactory")
+                .compile(Collections.singletonList(api), namedImplementation("Mkv", "mkv", 0));
+        assertTrue(new File(factoryModule, "test/ModuleFactory.class").isFile());
+        ClassLoader loader = classLoader(api, module, factoryModule);
+        Class<?> service = loader.loadClass("test.IB");
+
+        assertEquals("test.Mp4", ServiceProviderBuilder.buildService(service, "mp4", loader).getClass().getName());
+        assertEquals("test.Avi", ServiceProviderBuilder.buildService(service, "avi", loader).getClass().getName());
+        assertEquals("test.Mkv", ServiceProviderBuilder.buildService(service, "mkv", loader).getClass().getName());
+        assertNull(ServiceProviderBuilder.buildService(service, "wav", loader));
+        assertNull(ServiceProviderBuilder.buildService(service, "", loader));
+    }
+
+    @Test
+    public void reportDuplicateNameInOneCompilation() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        File api = compiler.compile(IB);
+        List<Diagnostic<? extends JavaFileObject>> errors = compiler.compile(mFolder.newFolder(),
+                Collections.singletonList(api), namedImplementation("Low", "codec", 0),
+                namedImplementation("High", "codec", 1));
+
+        assertEquals(errors.toString(), 1, errors.size());
+        assertEquals("test.IB implementations Low and High have same name codec", errors.get(0).getMessage(Locale.ROOT));
+    }
+
+    @Test
+    public void failOnDuplicateNameOfModules() throws Exception {
+        TestCompiler compiler = new TestCompiler(mFolder);
+        File api = compiler.compile(IB);
+        File low = compiler.compile(Collections.singletonList(api), namedImplementation("Low", "codec", 0));
+        File high = compiler.compile(Collections.singletonList(api), namedImplementation("High", "codec", 1));
+        ClassLoader loader = classLoader(api, low, high);
+        Class<?> service = loader.loadClass("test.IB");
+
+        // The error is cached until invalidated, like other configuration errors
+        for (int i = 0; i < 2; i++) {
+            try {
+                ServiceProviderBuilder.buildService(service, "codec", loader);
+                fail("Duplicate name not detected");
+            } catch (ServiceConfigurationError e) {
+                assertTrue(e.getMessage(), e.getMessage().endsWith("have same name codec"));
+            }
+        }
+    }
+
+    private static JavaFileObject namedImplementation(String simpleName, String name, int priority) {
+        return TestCompiler.source("test." + simpleName,
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.*;",
+                "@ServiceImplementation(name = \"" + name + "\", priority = " + priority + ")",
+                "public class " + simpleName + " implements IB { }");
+    }
+
+    private static JavaFileObject prioritizedImplementation(String simpleName, int priority) {
+        return TestCompiler.source("test." + simpleName,
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.*;",
+                "@ServiceImplementation(priority = " + priority + ")",
+                "public class " + simpleName + " implements IB { }");
+    }
+
+    private static List<String> buildServiceNames(ClassLoader loader) throws Exception {
+        List<String> names = new ArrayList<>();
+        for (Object service : ServiceProviderBuilder.buildServiceArray(loader.loadClass("test.IB"), loader)) {
+            names.add(service.getClass().getName());
+        }
+        return names;
+    }
+
+    private static JavaFileObject scopedImplementation(String simpleName, ServiceScope scope) {
+        return TestCompiler.source("test." + simpleName,
+                "package test;",
+                "import com.tablebird.serviceproviderbuilder.*;",
+                scope != null ? "@ServiceImplementation(scope = ServiceScope." + scope + ")" : "@ServiceImplementation",
+                "public class " + simpleName + " implements IB { }");
+    }
+
+    private static Object build(ClassLoader loader, String builderName) throws Exception {
+        return ((AbstractServiceBuilder<?>) loader.loadClass(builderName).newInstance()).build();
+    }
+
+    // A deadlocked build must not keep the test JVM alive
+    private static FutureTask<Object> buildOnDaemonThread(final Class<?> service, final ClassLoader loader) {
+        FutureTask<Object> task = new FutureTask<>(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return ServiceProviderBuilder.buildHighestPriorityService(service, loader);
+            }
+        });
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.setContextClassLoader(loader);
+        thread.start();
+        return task;
+    }
+
+    private static Object buildOnOtherThread(final ClassLoader loader, final String builderName) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return build(loader, builderName);
+                }
+            }).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
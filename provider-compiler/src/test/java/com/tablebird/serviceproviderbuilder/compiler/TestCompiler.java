@@ -0,0 +1,144 @@
+package com.tablebird.serviceproviderbuilder.compiler;
+
+import androidx.annotation.NonNull;
+
+import com.tablebird.serviceproviderbuilder.ServiceBuilder;
+import com.tablebird.serviceproviderbuilder.ServiceProvider;
+import com.tablebird.serviceproviderbuilder.ServiceProviderBuilder;
+
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compile sources with the {@link ServiceProviderProcessor} into class directories, as the modules of an app
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+final class TestCompiler {
+
+    private final TemporaryFolder mFolder;
+    private final List<String> mOptions = new ArrayList<>();
+
+    TestCompiler(TemporaryFolder folder) {
+        mFolder = folder;
+    }
+
+    TestCompiler withOptions(String... options) {
+        mOptions.addAll(Arrays.asList(options));
+        return this;
+    }
+
+    static JavaFileObject source(String className, String... lines) {
+        StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+        final String code = content.toString();
+        URI uri = URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension);
+        return new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    /**
+     * @param classpath class directories of the modules depended on
+     * @return class directory of the module
+     * @throws AssertionError if the compilation fails
+     */
+    File compile(List<File> classpath, JavaFileObject... sources) throws IOException {
+        File output = mFolder.newFolder();
+        List<Diagnostic<? extends JavaFileObject>> errors = compile(output, classpath, sources);
+        assertTrue("Compilation failed: " + errors, errors.isEmpty());
+        return output;
+    }
+
+    File compile(JavaFileObject... sources) throws IOException {
+        return compile(Collections.<File>emptyList(), sources);
+    }
+
+    /**
+     * Compile into an existing class directory, which is also on the class path, as an incremental build
+     *
+     * @return errors of the compilation
+     */
+    List<Diagnostic<? extends JavaFileObject>> compile(File output, List<File> classpath, JavaFileObject... sources)
+            throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, null)) {
+            List<File> files = new ArrayList<>(classpath);
+            files.add(output);
+            for (Class<?> dependency : Arrays.asList(NonNull.class, ServiceProvider.class, ServiceBuilder.class,
+                    ServiceProviderBuilder.class)) {
+                files.add(getLocation(dependency));
+            }
+            fileManager.setLocation(StandardLocation.CLASS_PATH, files);
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(output));
+            fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(output));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, mOptions, null,
+                    Arrays.asList(sources));
+            task.setProcessors(Collections.singletonList(new ServiceProviderProcessor()));
+            try {
+                task.call();
+            } catch (RuntimeException e) {
+                // The processor aborts the compilation by an exception after reporting an error
+                if (getErrors(diagnostics).isEmpty()) {
+                    throw e;
+                }
+            }
+        }
+        return getErrors(diagnostics);
+    }
+
+    private static List<Diagnostic<? extends JavaFileObject>> getErrors(DiagnosticCollector<JavaFileObject> diagnostics) {
+        List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic);
+            }
+        }
+        return errors;
+    }
+
+    static ClassLoader classLoader(File... modules) throws IOException {
+        URL[] urls = new URL[modules.length];
+        for (int i = 0; i < modules.length; i++) {
+            urls[i] = modules[i].toURI().toURL();
+        }
+        return new URLClassLoader(urls, TestCompiler.class.getClassLoader());
+    }
+
+    private static File getLocation(Class<?> c) {
+        try {
+            return new File(c.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
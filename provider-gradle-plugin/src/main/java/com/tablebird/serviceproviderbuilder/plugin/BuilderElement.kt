@@ -10,6 +10,11 @@ class BuilderElement constructor() {
     var isSingle: Boolean = false
     var values: LinkedHashSet<String>? = null
 
+    /**
+     * Value of the named implementation, by name
+     */
+    var names: LinkedHashMap<String, String>? = null
+
     @JvmOverloads
     constructor(key: String, isSingle: Boolean = false) : this() {
         this.key = key
@@ -1,289 +1,195 @@
 package com.tablebird.serviceproviderbuilder.plugin
 
-import com.google.common.reflect.TypeToken
-import com.google.gson.Gson
-import com.squareup.javapoet.CodeBlock
 import com.tablebird.serviceproviderbuilder.*
-import javassist.ClassPool
-import javassist.CtClass
-import javassist.CtConstructor
-import javassist.bytecode.AnnotationsAttribute
-import javassist.bytecode.annotation.ArrayMemberValue
-import javassist.bytecode.annotation.ClassMemberValue
-import javassist.bytecode.annotation.EnumMemberValue
 import org.gradle.api.GradleException
-import org.gradle.api.Project
 import java.io.*
 import java.util.*
-import java.util.jar.JarEntry
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
 import java.util.jar.JarFile
 import kotlin.collections.ArrayList
 import kotlin.collections.LinkedHashSet
 
 
 /**
+ * Find the service providers and their builders of the classes loaded, then generate the registry of them.
  *
  * @author tablebird
  * @date 2019/11/8
  */
-open class ServiceBuilderAction constructor(private val mProject: Project) {
+open class ServiceBuilderAction @JvmOverloads constructor(private val mScanCache: ServiceBuilderScanCache? = null) {
 
     companion object {
-        const val CACHE_FILE_NAME = "ProviderClasses.txt"
+        /**
+         * Separates the class name of a module service factory from the index passed to its constructor
+         */
+        const val INDEX_SEPARATOR = ':'
     }
 
-    private lateinit var mPool : ServiceBuilderClassPool
+    // Service provider to its element, in the order of the class paths loaded
+    private val mBuilders = LinkedHashMap<String, BuilderElement>()
 
-    private val mBuilders = ArrayList<BuilderElement>()
+    private var mHasRegistry = false
 
-    private var mRecordFile: File? = null
+    // Looked up by the generator for the builders only, scanned classes are not kept
+    private val mClassPaths = ArrayList<File>()
 
-    private var mRegistryClass: CtClass? = null
-    var mRegistryFilePath: String? = null
-        private set
-
-    init {
-        reset()
-    }
-
-    private fun reset() {
-        mPool = ServiceBuilderClassPool(true)
-        mBuilders.clear()
-        if (mRecordFile?.exists() == true) {
-            mRecordFile?.delete()
-        }
-        mRegistryClass = null
-        mRegistryFilePath = null
+    fun loadFile(file: File) {
+        loadFiles(listOf(file))
     }
 
-    fun setTempDir(dir: File) {
-        mRecordFile = File(dir, CACHE_FILE_NAME)
-        if (!mRecordFile!!.exists()) {
+    /**
+     * Scan the class paths in parallel on a bounded executor. The results are added in the order of
+     * the class paths, so the registry is the same whatever order the scans finish in.
+     */
+    fun loadFiles(files: List<File>) {
+        if (files.isEmpty()) {
             return
         }
-        val builderElement: List<BuilderElement>? = Gson().fromJson(
-            FileReader(mRecordFile!!),
-            object : TypeToken<List<BuilderElement>>() {}.type
-        )
-
-        if (builderElement?.isNotEmpty() == true) {
-            mBuilders.addAll(builderElement)
-        }
-    }
-
-    fun loadJar(jarFile: JarFile, change: Boolean = false) : Boolean{
-        var findRegistry = false
-        val entries = jarFile.entries()
-        while (entries.hasMoreElements()) {
-            val entry = entries.nextElement()
-            if (entry.name.endsWith(".class")) {
-                findRegistry = maybeChangeByJar(jarFile, entry, change) || findRegistry
+        mClassPaths.addAll(files)
+        val threads = minOf(files.size, Runtime.getRuntime().availableProcessors())
+        val executor = Executors.newFixedThreadPool(threads)
+        try {
+            val results = files.map { file -> executor.submit(Callable { scanFile(file) }) }
+            results.forEach { result ->
+                try {
+                    addScanResult(result.get())
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
             }
+        } finally {
+            executor.shutdownNow()
         }
-        return findRegistry
     }
 
-    fun loadFile(file: File?, change: Boolean = false): Boolean{
+    private fun scanFile(file: File): ServiceBuilderScanResult {
+        val result = ServiceBuilderScanResult()
         val stack = Stack<File>()
         stack.push(file)
-        var findRegistry = false
         while (!stack.isEmpty()) {
             val pop = stack.pop()
             when {
-                pop.isDirectory -> pop.listFiles()?.forEach { childFile ->
+                // Reversed by the stack, children are scanned in name order
+                pop.isDirectory -> pop.listFiles()?.sortedDescending()?.forEach { childFile ->
                     stack.push(childFile)
                 }
                 pop.name.endsWith(".class") -> {
-                    findRegistry = maybeChangeByFile(pop, change) || findRegistry
+                    scanClass(pop.readBytes(), result)
                 }
                 pop.name.endsWith(".jar") -> {
-                    val jarFile = JarFile(pop)
-                    findRegistry = loadJar(jarFile, change) || findRegistry
+                    scanJar(pop, result)
                 }
             }
         }
-        return findRegistry
+        return result
     }
 
-    fun removeJar(jarFile: JarFile) {
-        val entries = jarFile.entries()
-        while (entries.hasMoreElements()) {
-            val nextElement = entries.nextElement()
-            mPool.removeCached(nextElement.name)
-        }
-    }
-
-    fun removeFile(file: File) {
-        val default = ClassPool.getDefault()
-        val fileInputStream = FileInputStream(file)
-        val ctClass = default.makeClass(fileInputStream, false)
-        mPool.removeCached(ctClass.name)
-    }
-
-    private fun maybeChangeByFile(file: File, change: Boolean = false) : Boolean {
-        if (change) {
-            removeFile(file)
-        }
-        val fileInputStream = FileInputStream(file)
-        val ctClass = mPool.makeClass(fileInputStream, false)
-        return maybeChangeByClass(ctClass, change)
-    }
-
-    private fun maybeChangeByJar(jarFile: JarFile, jarEntry: JarEntry, change: Boolean = false) : Boolean {
-        if (change) {
-            mPool.removeCached(jarEntry.name)
+    /**
+     * Scan a jar, or take its scan from the cache by the content hash. A class file is always scanned,
+     * reading its header costs no more than hashing it.
+     */
+    private fun scanJar(file: File, result: ServiceBuilderScanResult) {
+        val scanCache = mScanCache
+        if (scanCache == null) {
+            JarFile(file).use { scanJar(it, result) }
+            return
         }
-        val stream: InputStream? = jarFile.getInputStream(jarEntry)
-        return if (stream != null) {
-            val ctClass = mPool.makeClass(stream, false)
-            stream.close()
-            if (ServiceBuilderRegistry::class.java.name == ctClass.name) {
-                mRegistryClass = ctClass
-                mRegistryFilePath = jarEntry.name
-                true
-            } else {
-                maybeChangeByClass(ctClass, true)
-            }
-        } else {
-            false
+        val hash = ServiceBuilderScanCache.hash(file)
+        val jarResult = scanCache.get(hash) ?: ServiceBuilderScanResult().also { jarResult ->
+            JarFile(file).use { scanJar(it, jarResult) }
+            scanCache.put(hash, jarResult)
         }
+        result.addAll(jarResult)
     }
 
-    private fun maybeChangeByClass(ctClass: CtClass, change: Boolean = false): Boolean {
-        if (ctClass.isAnnotation || ctClass.isEnum) {
-            return false
-        }
-        if (ctClass.hasAnnotation(ServiceProvider::class.java)) {
-            anaylizeProviderClass(ctClass)
-            return false
-        }
-        if (ctClass.isInterface) {
-            return false
-        }
-        if(ctClass.hasAnnotation(Build::class.java)
-            && ctClass.subtypeOf(mPool.makeInterface(ServiceBuilder::class.java.name))
-        ) {
-            if (change) {
-                removeOldValue(ctClass.name)
+    private fun scanJar(jarFile: JarFile, result: ServiceBuilderScanResult) {
+        val entries = jarFile.entries()
+        while (entries.hasMoreElements()) {
+            val entry = entries.nextElement()
+            if (entry.name.endsWith(".class")) {
+                val stream: InputStream = jarFile.getInputStream(entry) ?: continue
+                scanClass(stream.use { it.readBytes() }, result)
             }
-            anaylizeBuilderClass(ctClass)
-            return false
-        }
-        if (ServiceBuilderRegistry::class.java.name == ctClass.name) {
-            mRegistryClass = ctClass
-            return true
         }
-        return false
     }
 
-    private fun anaylizeProviderClass(ctClass: CtClass) {
-        val classFile = ctClass.classFile
-        val attribute =
-            classFile.getAttribute(AnnotationsAttribute.visibleTag) as AnnotationsAttribute
-        val annotation = attribute.getAnnotation(ServiceProvider::class.java.name)
-        val memberValue = annotation.getMemberValue(ServiceProvider::value.name)
-        val element = getElement(ctClass.name)
-        element.isSingle = if (memberValue == null) {
-            false
-        } else {
-            val serviceProviderPolicy = memberValue as EnumMemberValue
-            serviceProviderPolicy.value == ServiceProviderPolicy.SINGLE.name
+    private fun scanClass(classBytes: ByteArray, result: ServiceBuilderScanResult) {
+        val scanner = ServiceBuilderClassScanner()
+        scanner.scan(classBytes)
+        val className = scanner.className ?: return
+        if (scanner.isServiceProvider || scanner.isBuilder) {
+            result.classes.add(scanner.toScannedClass())
+        } else if (ServiceBuilderRegistry::class.java.name == className) {
+            result.hasRegistry = true
         }
     }
 
-    private fun anaylizeBuilderClass(ctClass: CtClass) {
-        val classFile = ctClass.classFile
-        val attribute =
-            classFile.getAttribute(AnnotationsAttribute.invisibleTag) as AnnotationsAttribute
-        val annotation = attribute.getAnnotation(Build::class.java.name)
-        val serviceProviders =
-            annotation.getMemberValue(Build::serviceProviders.name) as ArrayMemberValue
-        serviceProviders.value.forEach { memberValue ->
-            val classMemberValue = memberValue as ClassMemberValue
-            val value = classMemberValue.value
-            val builderElement = getElement(value)
-            builderElement.values?.add(ctClass.name)
+    private fun addScanResult(result: ServiceBuilderScanResult) {
+        result.classes.forEach { scannedClass ->
+            if (scannedClass.isServiceProvider) {
+                getElement(scannedClass.className).isSingle = scannedClass.isSingle
+            } else {
+                anaylizeBuilderClass(scannedClass)
+            }
         }
+        mHasRegistry = mHasRegistry || result.hasRegistry
     }
 
-    private fun getElement(key: String): BuilderElement {
-        mBuilders.forEach { builderElement ->
-            if (key == builderElement.key) {
-                return builderElement
+    private fun anaylizeBuilderClass(scannedClass: ServiceBuilderScanResult.ScannedClass) {
+        val className = scannedClass.className
+        // A module service factory builds the service provider of the same position in indexes
+        scannedClass.serviceProviders.forEachIndexed { i, serviceProvider ->
+            val builderElement = getElement(serviceProvider)
+            val index = scannedClass.indexes.getOrNull(i)
+            val builderValue = if (index == null) className else "$className$INDEX_SEPARATOR$index"
+            builderElement.values?.add(builderValue)
+            val name = scannedClass.names.getOrNull(i)
+            if (!name.isNullOrEmpty()) {
+                addName(builderElement, name, builderValue)
             }
         }
-        return addElement(key)
     }
 
-    private fun addElement(key: String, isSingle: Boolean = false): BuilderElement{
-        return BuilderElement(key, isSingle).also {
-            it.values = LinkedHashSet<String>()
-            mBuilders.add(it)
+    @Throws(GradleException::class)
+    private fun addName(element: BuilderElement, name: String, value: String) {
+        val names = element.names ?: LinkedHashMap<String, String>().also { element.names = it }
+        val oldValue = names[name]
+        if (oldValue != null && oldValue != value) {
+            throw GradleException("Service provider ${element.key} implementations $oldValue and $value have same name $name")
         }
+        names[name] = value
     }
 
-    private fun removeOldValue(name: String?) {
-        mBuilders.forEach { builder ->
-            builder.values?.remove(name)
-        }
+    /**
+     * @return builder of each named implementation of the service provider, by name
+     */
+    internal fun getNames(key: String): Map<String, String> {
+        return mBuilders[key]?.names ?: emptyMap()
     }
 
-    fun injectRegistryByte(): ByteArray? {
-        createCache()
-        return mRegistryClass?.let {ctClass ->
-            if (ctClass.isFrozen) {
-                ctClass.defrost()
-            }
-            var staticConstructor: CtConstructor? = ctClass.classInitializer
-            if (staticConstructor == null) {
-                staticConstructor = ctClass.makeClassInitializer()
-            }
-
-            val block = generateStaticBlock()
-            staticConstructor?.insertAfter(block.toString())
-            ctClass.detach()
-            ctClass.toBytecode()
+    private fun getElement(key: String): BuilderElement {
+        return mBuilders.getOrPut(key) {
+            BuilderElement(key).also { it.values = LinkedHashSet<String>() }
         }
     }
 
-    private fun createCache() {
-        var outputStreamWriter: OutputStreamWriter? = null
-        try {
-            outputStreamWriter = OutputStreamWriter(FileOutputStream(mRecordFile!!))
-            outputStreamWriter.write(Gson().toJson(mBuilders.filter { it.values?.isNotEmpty() == true }))
-            outputStreamWriter.flush()
-            outputStreamWriter.close()
-        } catch (e: IOException) {
-
-        } finally {
-            outputStreamWriter?.let {
-                try {
-                    outputStreamWriter.close()
-                } catch (e: IOException) {
-
-                }
-            }
+    /**
+     * @return bytecode of the registry loader and its index classes by jar entry name, empty if
+     * [ServiceBuilderRegistry] is not loaded
+     */
+    fun registryBytes(): Map<String, ByteArray> {
+        if (!mHasRegistry) {
+            return emptyMap()
         }
-    }
-
-    private fun generateStaticBlock(): CodeBlock {
-        val builder = CodeBlock.builder()
-        mBuilders.forEach { element ->
-            element.values?.let { set ->
-                if (element.isSingle && set.size > 1) {
-                    throw GradleException("Service provider ${element.key} implementation not single, values $set ")
-
-                }
-                set.forEach { value ->
-                    builder.addStatement("register(\$L.class, new \$L())", element.key, value)
-                }
-            }
+        val elements = mBuilders.values.filter { it.values?.isNotEmpty() == true }
+        val result = LinkedHashMap<String, ByteArray>()
+        val pool = ServiceBuilderClassPool(true)
+        mClassPaths.forEach { pool.appendClassPath(it.absolutePath) }
+        ServiceBuilderRegistryGenerator(pool).generate(elements).forEach { (name, bytes) ->
+            result[name.replace('.', '/') + ".class"] = bytes
         }
-        return builder.build()
-
-    }
-
-    fun clearCache() {
-        reset()
+        return result
     }
-}
\ No newline at end of file
+}
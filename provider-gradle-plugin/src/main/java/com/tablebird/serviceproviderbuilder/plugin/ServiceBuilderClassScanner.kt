@@ -0,0 +1,125 @@
+package com.tablebird.serviceproviderbuilder.plugin
+
+import com.tablebird.serviceproviderbuilder.Build
+import com.tablebird.serviceproviderbuilder.ServiceProvider
+import com.tablebird.serviceproviderbuilder.ServiceProviderPolicy
+import org.objectweb.asm.AnnotationVisitor
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Type
+
+/**
+ * Read the header and the class annotations of a class file, enough to find service providers and
+ * their builders. Code, debug information and members are skipped and no class model is kept, so
+ * scanning every class of an app costs little heap.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+class ServiceBuilderClassScanner : ClassVisitor(Opcodes.ASM9) {
+
+    companion object {
+        /**
+         * Version of the scan, bumped with any change of what is read from a class file, so the scans
+         * of an older scanner kept by [ServiceBuilderScanCache] are not reused
+         */
+        const val VERSION = 1
+
+        private const val PARSING_OPTIONS = ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES
+        private val SERVICE_PROVIDER_DESCRIPTOR = Type.getDescriptor(ServiceProvider::class.java)
+        private val BUILD_DESCRIPTOR = Type.getDescriptor(Build::class.java)
+    }
+
+    /**
+     * Binary name of the class scanned, as [Class.getName]
+     */
+    var className: String? = null
+        private set
+
+    var isServiceProvider = false
+        private set
+
+    var isSingle = false
+        private set
+
+    var isBuilder = false
+        private set
+
+    /**
+     * Members of [Build] of a builder, the same position of each is one service provider built
+     */
+    val serviceProviders = ArrayList<String>()
+    val indexes = ArrayList<Int>()
+    val names = ArrayList<String>()
+
+    private var mAccess = 0
+
+    fun scan(classBytes: ByteArray) {
+        ClassReader(classBytes).accept(this, PARSING_OPTIONS)
+    }
+
+    fun toScannedClass(): ServiceBuilderScanResult.ScannedClass {
+        return ServiceBuilderScanResult.ScannedClass(className!!, isServiceProvider, isSingle, serviceProviders, indexes, names)
+    }
+
+    override fun visit(
+        version: Int,
+        access: Int,
+        name: String,
+        signature: String?,
+        superName: String?,
+        interfaces: Array<out String>?
+    ) {
+        className = Type.getObjectType(name).className
+        mAccess = access
+    }
+
+    override fun visitAnnotation(descriptor: String, visible: Boolean): AnnotationVisitor? {
+        if (mAccess and (Opcodes.ACC_ANNOTATION or Opcodes.ACC_ENUM) != 0) {
+            return null
+        }
+        return when (descriptor) {
+            SERVICE_PROVIDER_DESCRIPTOR -> {
+                isServiceProvider = true
+                object : AnnotationVisitor(Opcodes.ASM9) {
+                    override fun visitEnum(name: String?, descriptor: String?, value: String?) {
+                        if (name == ServiceProvider::value.name) {
+                            isSingle = value == ServiceProviderPolicy.SINGLE.name
+                        }
+                    }
+                }
+            }
+            BUILD_DESCRIPTOR -> {
+                if (mAccess and Opcodes.ACC_INTERFACE != 0) {
+                    return null
+                }
+                isBuilder = true
+                object : AnnotationVisitor(Opcodes.ASM9) {
+                    // Arrays of primitives are visited as a whole
+                    override fun visit(name: String?, value: Any?) {
+                        if (name == Build::indexes.name && value is IntArray) {
+                            indexes.addAll(value.toList())
+                        }
+                    }
+
+                    override fun visitArray(name: String?): AnnotationVisitor? {
+                        return when (name) {
+                            Build::serviceProviders.name -> ArrayVisitor { serviceProviders.add((it as Type).className) }
+                            Build::indexes.name -> ArrayVisitor { indexes.add(it as Int) }
+                            Build::names.name -> ArrayVisitor { names.add(it as String) }
+                            else -> null
+                        }
+                    }
+                }
+            }
+            else -> null
+        }
+    }
+
+    private class ArrayVisitor(private val mConsumer: (Any) -> Unit) : AnnotationVisitor(Opcodes.ASM9) {
+        override fun visit(name: String?, value: Any) {
+            mConsumer(value)
+        }
+    }
+}
@@ -1,21 +1,58 @@
 package com.tablebird.serviceproviderbuilder.plugin
 
-import com.android.build.gradle.AppExtension
-import com.android.build.gradle.AppPlugin
+import com.android.build.api.artifact.ScopedArtifact
+import com.android.build.api.variant.ApplicationAndroidComponentsExtension
+import com.android.build.api.variant.ApplicationVariant
+import com.android.build.api.variant.ScopedArtifacts
 import org.gradle.api.Plugin
 import org.gradle.api.Project
+import org.gradle.api.attributes.Attribute
+import java.io.File
 
 /**
+ * Register a [ServiceBuilderRegistryTask] for every variant of the application, its registry classes
+ * are appended to the classes of the variant.
+ *
+ * The task reads the compiled classes of the project and the classes jars of the runtime dependencies
+ * rather than the scoped classes artifact, which would include the appended registry itself.
  *
  * @author tablebird
  * @date 2019/11/8
  */
 class ServiceBuilderPlugin : Plugin<Project> {
+
+    companion object {
+        private val ARTIFACT_TYPE = Attribute.of("artifactType", String::class.java)
+        private const val CLASSES_JAR = "android-classes-jar"
+        private const val SCAN_CACHE_PATH = "caches/service-provider-builder/scan"
+    }
+
     override fun apply(project: Project) {
-        if (!project.plugins.hasPlugin(AppPlugin::class.java)) {
-            return
+        project.plugins.withId("com.android.application") {
+            project.extensions.getByType(ApplicationAndroidComponentsExtension::class.java)
+                .onVariants { variant -> registerRegistryTask(project, variant) }
+        }
+    }
+
+    private fun registerRegistryTask(project: Project, variant: ApplicationVariant) {
+        val variantName = variant.name.replaceFirstChar { it.uppercaseChar() }
+        val taskProvider = project.tasks.register(
+            "generate${variantName}ServiceBuilderRegistry",
+            ServiceBuilderRegistryTask::class.java
+        ) { task ->
+            task.classpath.from(variant.runtimeConfiguration.incoming.artifactView { view ->
+                view.attributes { it.attribute(ARTIFACT_TYPE, CLASSES_JAR) }
+            }.files)
+            task.classpath.from(project.tasks.named("compile${variantName}JavaWithJavac"))
+            project.plugins.withId("org.jetbrains.kotlin.android") {
+                task.classpath.from(project.tasks.named("compile${variantName}Kotlin"))
+            }
+            task.outputDirectory.set(project.layout.buildDirectory.dir("intermediates/service_builder_registry/${variant.name}"))
+            // Outside of the build directory, kept by a clean build
+            task.scanCacheDirectory.set(File(project.gradle.gradleUserHomeDir, SCAN_CACHE_PATH))
         }
-        project.extensions.findByType(AppExtension::class.java)
-            ?.registerTransform(ServiceBuilderFindTransform(project))
+        variant.artifacts.forScope(ScopedArtifacts.Scope.PROJECT)
+            .use(taskProvider)
+            .toAppend(ScopedArtifact.CLASSES, ServiceBuilderRegistryTask::outputDirectory)
     }
-}
\ No newline at end of file
+}
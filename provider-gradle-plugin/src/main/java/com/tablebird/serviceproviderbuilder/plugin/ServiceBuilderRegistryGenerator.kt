@@ -0,0 +1,161 @@
+package com.tablebird.serviceproviderbuilder.plugin
+
+import com.squareup.javapoet.CodeBlock
+import com.tablebird.serviceproviderbuilder.ServiceBuilderRegistry
+import javassist.ClassPool
+import javassist.CtClass
+import javassist.CtNewConstructor
+import javassist.CtNewMethod
+import javassist.Modifier
+import org.gradle.api.GradleException
+
+/**
+ * Generate the loader of service builders found by [ServiceBuilderRegistry], named `ServiceBuilderRegistry_Loader`.
+ *
+ * The interfaces are split into index classes of [CHUNK_SIZE] interfaces each, named
+ * `ServiceBuilderRegistry_Index<N>`. An index class indexes its interfaces by name and instantiates
+ * their builders, so no generated method or constant pool grows with the size of the app.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+class ServiceBuilderRegistryGenerator constructor(private val mPool: ClassPool) {
+
+    companion object {
+        const val CHUNK_SIZE = 500
+        private const val LOAD_METHOD_NAME = "load"
+        private const val INDEX_METHOD_NAME = "index"
+        private val REGISTRY_NAME = ServiceBuilderRegistry::class.java.name
+        private val INDEX_CLASS_PREFIX = REGISTRY_NAME + "_Index"
+        private val LOADER_NAME = REGISTRY_NAME + "_Loader"
+        private val LOADER_INTERFACE_NAME = REGISTRY_NAME + "\$Loader"
+    }
+
+    /**
+     * @return bytecode of the loader and the index classes, by class name
+     */
+    @Throws(GradleException::class)
+    fun generate(elements: List<BuilderElement>): Map<String, ByteArray> {
+        val result = LinkedHashMap<String, ByteArray>()
+        val chunks = elements.chunked(CHUNK_SIZE)
+        val indexClasses = chunks.mapIndexed { chunk, chunkElements ->
+            generateIndexClass(INDEX_CLASS_PREFIX + chunk, chunk * CHUNK_SIZE, chunkElements)
+        }
+        indexClasses.forEach { indexClass ->
+            result[indexClass.name] = indexClass.toBytecode()
+        }
+
+        val loaderClass = generateLoaderClass(chunks.size)
+        result[loaderClass.name] = loaderClass.toBytecode()
+        loaderClass.detach()
+        indexClasses.forEach { it.detach() }
+        return result
+    }
+
+    private fun generateLoaderClass(chunkCount: Int): CtClass {
+        mPool.getOrNull(LOADER_NAME)?.detach()
+        val loaderClass = mPool.makeClass(LOADER_NAME)
+        loaderClass.modifiers = Modifier.FINAL
+        loaderClass.addInterface(mPool.get(LOADER_INTERFACE_NAME))
+        loaderClass.addConstructor(CtNewConstructor.defaultConstructor(loaderClass))
+        loaderClass.addMethod(CtNewMethod.make(
+            "public void $INDEX_METHOD_NAME() ${generateLoaderIndexBody(chunkCount)}", loaderClass))
+        loaderClass.addMethod(CtNewMethod.make(
+            "public void $LOAD_METHOD_NAME(int id, java.util.Set result) ${generateLoaderLoadBody(chunkCount)}",
+            loaderClass))
+        return loaderClass
+    }
+
+    private fun generateIndexClass(name: String, firstId: Int, elements: List<BuilderElement>): CtClass {
+        mPool.getOrNull(name)?.detach()
+        val indexClass = mPool.makeClass(name)
+        indexClass.modifiers = Modifier.FINAL
+        indexClass.addMethod(CtNewMethod.make(
+            "static void $INDEX_METHOD_NAME() ${generateIndexBody(firstId, elements)}", indexClass))
+        indexClass.addMethod(CtNewMethod.make(
+            "static void $LOAD_METHOD_NAME(int id, java.util.Set result) ${generateLoadBody(firstId, elements)}",
+            indexClass))
+        return indexClass
+    }
+
+    /**
+     * Index every interface by name, so no interface or builder class is loaded by the registry initializer
+     */
+    private fun generateIndexBody(firstId: Int, elements: List<BuilderElement>): CodeBlock {
+        val builder = CodeBlock.builder()
+            .add("{\n")
+            .indent()
+        elements.forEachIndexed { i, element ->
+            val set = element.values!!
+            if (element.isSingle && set.size > 1) {
+                throw GradleException("Service provider ${element.key} implementation not single, values $set ")
+            }
+            builder.addStatement("\$L.index(\$S, \$L)", REGISTRY_NAME, element.key, firstId + i)
+        }
+        return builder.unindent()
+            .add("}\n")
+            .build()
+    }
+
+    /**
+     * Instantiate the builders of the interface indexed with id, on its first lookup
+     */
+    private fun generateLoadBody(firstId: Int, elements: List<BuilderElement>): CodeBlock {
+        val builder = CodeBlock.builder()
+            .add("{\n")
+            .indent()
+            .beginControlFlow("switch (id)")
+        elements.forEachIndexed { i, element ->
+            builder.add("case \$L:\n", firstId + i).indent()
+            element.values!!.forEach { value ->
+                val separator = value.indexOf(ServiceBuilderAction.INDEX_SEPARATOR)
+                if (separator < 0) {
+                    builder.addStatement("result.add(new \$L())", value)
+                } else {
+                    builder.addStatement("result.add(new \$L(\$L))",
+                        value.substring(0, separator), value.substring(separator + 1))
+                }
+            }
+            builder.addStatement("break").unindent()
+        }
+        return builder.endControlFlow()
+            .unindent()
+            .add("}\n")
+            .build()
+    }
+
+    private fun generateLoaderIndexBody(chunkCount: Int): CodeBlock {
+        val builder = CodeBlock.builder()
+            .add("{\n")
+            .indent()
+        for (chunk in 0 until chunkCount) {
+            builder.addStatement("\$L.\$L()", INDEX_CLASS_PREFIX + chunk, INDEX_METHOD_NAME)
+        }
+        return builder.unindent()
+            .add("}\n")
+            .build()
+    }
+
+    private fun generateLoaderLoadBody(chunkCount: Int): CodeBlock {
+        val builder = CodeBlock.builder()
+            .add("{\n")
+            .indent()
+        if (chunkCount == 0) {
+            // Javassist rejects a switch without case
+            return builder.unindent()
+                .add("}\n")
+                .build()
+        }
+        builder.beginControlFlow("switch (id / \$L)", CHUNK_SIZE)
+        for (chunk in 0 until chunkCount) {
+            builder.add("case \$L:\n", chunk).indent()
+                .addStatement("\$L.\$L(id, result)", INDEX_CLASS_PREFIX + chunk, LOAD_METHOD_NAME)
+                .addStatement("break")
+                .unindent()
+        }
+        return builder.endControlFlow()
+            .unindent()
+            .add("}\n")
+            .build()
+    }
+}
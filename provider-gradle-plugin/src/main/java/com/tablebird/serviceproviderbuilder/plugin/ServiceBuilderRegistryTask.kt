@@ -0,0 +1,58 @@
+package com.tablebird.serviceproviderbuilder.plugin
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Classpath
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.TaskAction
+import java.io.File
+
+/**
+ * Scan the classes of a variant for service providers and their builders, and write the generated
+ * registry classes only. The classes are never copied, the output is appended to the classes of the
+ * variant, so an unchanged classpath is up to date or restored from the build cache.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+@CacheableTask
+abstract class ServiceBuilderRegistryTask : DefaultTask() {
+
+    /**
+     * Class directories and jars of the variant
+     */
+    @get:Classpath
+    abstract val classpath: ConfigurableFileCollection
+
+    @get:OutputDirectory
+    abstract val outputDirectory: DirectoryProperty
+
+    /**
+     * Directory of the [ServiceBuilderScanCache] shared by all variants and builds, not an input since
+     * the scans are keyed by content
+     */
+    @get:Internal
+    abstract val scanCacheDirectory: DirectoryProperty
+
+    @TaskAction
+    fun generate() {
+        val outputDir = outputDirectory.get().asFile
+        outputDir.deleteRecursively()
+        outputDir.mkdirs()
+        logger.info("==================================> Service builder start working <=======================================")
+        val scanCache = ServiceBuilderScanCache(scanCacheDirectory.get().asFile)
+        val action = ServiceBuilderAction(scanCache)
+        action.loadFiles(classpath.files.filter { it.exists() })
+        action.registryBytes().forEach { (entryName, bytes) ->
+            val outputFile = File(outputDir, entryName)
+            outputFile.parentFile.mkdirs()
+            outputFile.writeBytes(bytes)
+            logger.info("registry class:\t $entryName")
+        }
+        scanCache.cleanUp()
+        logger.info("==================================> Service builder work finish <=======================================")
+    }
+}
@@ -0,0 +1,192 @@
+package com.tablebird.serviceproviderbuilder.plugin
+
+import java.io.*
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.concurrent.TimeUnit
+
+/**
+ * Persistent cache of the scans of jars, keyed by the SHA-256 of the jar content. Each scan is a file
+ * named by its key, so a lookup is one file read whatever the size of the cache, and a jar scanned once
+ * is never parsed again, by any variant, project or build using the same directory.
+ *
+ * Scans are kept apart by the cache and [ServiceBuilderClassScanner] versions, a scanner fix never reads
+ * the scans of the older scanner. A scan is touched when read, [cleanUp] deletes the scans not used for
+ * the max unused age, 30 days by default. Scans of other versions age out alike, so builds still on
+ * another version of the plugin keep theirs.
+ *
+ * Layout of a scan file, all integers big-endian, strings modified UTF-8 as [DataOutput.writeUTF]:
+ * <pre>
+ *     u4 magic "SPBS", u2 version, u2 scanner version, u1 has registry, u4 class count
+ *     class count * (string class name, u1 service provider, u1 single,
+ *         u4 count, count * string service provider,
+ *         u4 count, count * u4 index,
+ *         u4 count, count * string name)
+ * </pre>
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+class ServiceBuilderScanCache @JvmOverloads constructor(
+    private val mDirectory: File,
+    private val mMaxUnusedAge: Long = DEFAULT_MAX_UNUSED_AGE
+) {
+
+    companion object {
+        private const val MAGIC = 0x53504253
+        private const val VERSION = 2
+        private const val BUFFER_SIZE = 64 * 1024
+        private const val CLEAN_UP_MARKER = "clean-up"
+
+        @JvmField
+        val DEFAULT_MAX_UNUSED_AGE = TimeUnit.DAYS.toMillis(30)
+
+        /**
+         * Least time between two clean ups, and between two touches of a scan
+         */
+        @JvmField
+        val CLEAN_UP_INTERVAL = TimeUnit.DAYS.toMillis(1)
+
+        /**
+         * @return hex SHA-256 of the file content
+         */
+        @JvmStatic
+        fun hash(file: File): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            val buffer = ByteArray(BUFFER_SIZE)
+            FileInputStream(file).use { input ->
+                var length = input.read(buffer)
+                while (length >= 0) {
+                    digest.update(buffer, 0, length)
+                    length = input.read(buffer)
+                }
+            }
+            val hash = StringBuilder()
+            digest.digest().forEach { hash.append(String.format("%02x", it)) }
+            return hash.toString()
+        }
+    }
+
+    /**
+     * @return the scan of the jar with the hash, or null if not cached or unreadable
+     */
+    fun get(hash: String): ServiceBuilderScanResult? {
+        val file = getFile(hash)
+        if (!file.isFile) {
+            return null
+        }
+        val result = try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { read(it) }
+        } catch (e: IOException) {
+            // Scanned again and replaced
+            return null
+        }
+        val now = System.currentTimeMillis()
+        if (now - file.lastModified() >= CLEAN_UP_INTERVAL) {
+            file.setLastModified(now)
+        }
+        return result
+    }
+
+    /**
+     * Write the scan of the jar with the hash. The file is written aside and moved in place, so a
+     * concurrent build reads either nothing or the whole scan.
+     */
+    fun put(hash: String, result: ServiceBuilderScanResult) {
+        val file = getFile(hash)
+        try {
+            file.parentFile.mkdirs()
+            val tempFile = File.createTempFile(hash, ".tmp", file.parentFile)
+            try {
+                DataOutputStream(BufferedOutputStream(FileOutputStream(tempFile))).use { write(it, result) }
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE)
+            } finally {
+                tempFile.delete()
+            }
+        } catch (e: IOException) {
+            // Not cached, scanned again by the next build
+        }
+    }
+
+    /**
+     * Delete the scans of every version not used for the max unused age, at most once per
+     * [CLEAN_UP_INTERVAL] for all builds sharing the directory.
+     */
+    @JvmOverloads
+    fun cleanUp(now: Long = System.currentTimeMillis()) {
+        val marker = File(mDirectory, CLEAN_UP_MARKER)
+        if (marker.isFile && now - marker.lastModified() < CLEAN_UP_INTERVAL) {
+            return
+        }
+        try {
+            mDirectory.mkdirs()
+            marker.createNewFile()
+            marker.setLastModified(now)
+        } catch (e: IOException) {
+            return
+        }
+        // Bottom up, so a directory emptied is deleted too, a directory not empty is kept by delete
+        mDirectory.walkBottomUp().forEach { file ->
+            if (file.isDirectory) {
+                if (file != mDirectory) {
+                    file.delete()
+                }
+            } else if (file != marker && now - file.lastModified() > mMaxUnusedAge) {
+                file.delete()
+            }
+        }
+    }
+
+    private fun getVersionDirectory(): File {
+        return File(mDirectory, "v$VERSION.${ServiceBuilderClassScanner.VERSION}")
+    }
+
+    private fun getFile(hash: String): File {
+        return File(getVersionDirectory(), "${hash.substring(0, 2)}/$hash")
+    }
+
+    @Throws(IOException::class)
+    private fun read(input: DataInputStream): ServiceBuilderScanResult {
+        if (input.readInt() != MAGIC || input.readUnsignedShort() != VERSION ||
+            input.readUnsignedShort() != ServiceBuilderClassScanner.VERSION) {
+            throw IOException("Illegal scan cache")
+        }
+        val result = ServiceBuilderScanResult()
+        result.hasRegistry = input.readBoolean()
+        val classCount = input.readInt()
+        for (i in 0 until classCount) {
+            val className = input.readUTF()
+            val isServiceProvider = input.readBoolean()
+            val isSingle = input.readBoolean()
+            val serviceProviders = List(input.readInt()) { input.readUTF() }
+            val indexes = List(input.readInt()) { input.readInt() }
+            val names = List(input.readInt()) { input.readUTF() }
+            result.classes.add(ServiceBuilderScanResult.ScannedClass(
+                className, isServiceProvider, isSingle, serviceProviders, indexes, names))
+        }
+        return result
+    }
+
+    @Throws(IOException::class)
+    private fun write(output: DataOutputStream, result: ServiceBuilderScanResult) {
+        output.writeInt(MAGIC)
+        output.writeShort(VERSION)
+        output.writeShort(ServiceBuilderClassScanner.VERSION)
+        output.writeBoolean(result.hasRegistry)
+        output.writeInt(result.classes.size)
+        result.classes.forEach { scannedClass ->
+            output.writeUTF(scannedClass.className)
+            output.writeBoolean(scannedClass.isServiceProvider)
+            output.writeBoolean(scannedClass.isSingle)
+            output.writeInt(scannedClass.serviceProviders.size)
+            scannedClass.serviceProviders.forEach { output.writeUTF(it) }
+            output.writeInt(scannedClass.indexes.size)
+            scannedClass.indexes.forEach { output.writeInt(it) }
+            output.writeInt(scannedClass.names.size)
+            scannedClass.names.forEach { output.writeUTF(it) }
+        }
+        output.flush()
+    }
+}
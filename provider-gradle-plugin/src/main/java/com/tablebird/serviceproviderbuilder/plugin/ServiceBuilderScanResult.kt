@@ -0,0 +1,31 @@
+package com.tablebird.serviceproviderbuilder.plugin
+
+/**
+ * Service providers and builders found by the scan of a class path, kept by [ServiceBuilderScanCache] for a jar.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+class ServiceBuilderScanResult {
+
+    val classes = ArrayList<ScannedClass>()
+
+    var hasRegistry = false
+
+    fun addAll(result: ServiceBuilderScanResult) {
+        classes.addAll(result.classes)
+        hasRegistry = hasRegistry || result.hasRegistry
+    }
+
+    /**
+     * A service provider, or a builder with the members of its `Build` annotation
+     */
+    class ScannedClass(
+        val className: String,
+        val isServiceProvider: Boolean,
+        val isSingle: Boolean,
+        val serviceProviders: List<String>,
+        val indexes: List<Int>,
+        val names: List<String>
+    )
+}
@@ -0,0 +1,73 @@
+package com.tablebird.serviceproviderbuilder.plugin
+
+import com.tablebird.serviceproviderbuilder.Build
+import org.gradle.api.GradleException
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Type
+import java.io.File
+
+/**
+ * @author tablebird
+ * @date 2026/10/18
+ */
+class ServiceBuilderActionTest {
+
+    @get:Rule
+    val mFolder = TemporaryFolder()
+
+    @Test
+    fun loadNamesOfDifferentServices() {
+        val classes = mFolder.newFolder()
+        writeBuilder(classes, "a.Mp4_Builder", "a.ICodec", "mp4")
+        writeBuilder(classes, "a.Mp4Player_Builder", "a.IPlayer", "mp4")
+        val other = mFolder.newFolder()
+        writeBuilder(other, "a.Avi_Builder", "a.ICodec", "avi")
+
+        val action = ServiceBuilderAction()
+        action.loadFiles(listOf(classes, other))
+
+        assertEquals(mapOf("mp4" to "a.Mp4_Builder", "avi" to "a.Avi_Builder"), action.getNames("a.ICodec"))
+        assertEquals(mapOf("mp4" to "a.Mp4Player_Builder"), action.getNames("a.IPlayer"))
+    }
+
+    @Test
+    fun failOnDuplicateNames() {
+        val classes = mFolder.newFolder()
+        writeBuilder(classes, "a.Mp4_Builder", "a.ICodec", "mp4")
+        val other = mFolder.newFolder()
+        writeBuilder(other, "b.Mp4_Builder", "a.ICodec", "mp4")
+
+        try {
+            ServiceBuilderAction().loadFiles(listOf(classes, other))
+            fail("Duplicate names loaded")
+        } catch (e: GradleException) {
+            assertTrue(e.message, e.message!!.endsWith("a.Mp4_Builder and b.Mp4_Builder have same name mp4"))
+        }
+    }
+
+    private fun writeBuilder(directory: File, className: String, serviceProvider: String, name: String) {
+        val writer = ClassWriter(0)
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className.replace('.', '/'), null, "java/lang/Object", null)
+        val build = writer.visitAnnotation(Type.getDescriptor(Build::class.java), true)
+        build.visitArray(Build::serviceProviders.name).apply {
+            visit(null, Type.getObjectType(serviceProvider.replace('.', '/')))
+            visitEnd()
+        }
+        build.visitArray(Build::names.name).apply {
+            visit(null, name)
+            visitEnd()
+        }
+        build.visitEnd()
+        writer.visitEnd()
+        val file = File(directory, className.replace('.', '/') + ".class")
+        file.parentFile.mkdirs()
+        file.writeBytes(writer.toByteArray())
+    }
+}
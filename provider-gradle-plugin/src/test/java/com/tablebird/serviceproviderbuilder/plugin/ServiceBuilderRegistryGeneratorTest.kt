@@ -0,0 +1,113 @@
+package com.tablebird.serviceproviderbuilder.plugin
+
+import com.tablebird.serviceproviderbuilder.ServiceBuilder
+import com.tablebird.serviceproviderbuilder.ServiceBuilderRegistry
+import javassist.ClassPool
+import javassist.CtNewConstructor
+import javassist.CtNewMethod
+import javassist.bytecode.ClassFile
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
+
+/**
+ * Test of the registry generated for an app, from none to more registrations than fit in one method.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+class ServiceBuilderRegistryGeneratorTest {
+
+    companion object {
+        private const val PACKAGE = "com.tablebird.serviceproviderbuilder.plugin.generated"
+        private const val SERVICE_COUNT = 10_500
+        private const val MAX_CODE_LENGTH = 65535
+    }
+
+    @Test
+    fun generateRegistryOverMethodLimit() {
+        val pool = ClassPool(true)
+        val elements = createServices(pool)
+        val bytes = ServiceBuilderRegistryGenerator(pool).generate(elements)
+
+        val chunkCount = (SERVICE_COUNT + ServiceBuilderRegistryGenerator.CHUNK_SIZE - 1) /
+                ServiceBuilderRegistryGenerator.CHUNK_SIZE
+        assertEquals(chunkCount + 1, bytes.size)
+        bytes.values.forEach { classBytes ->
+            val classFile = ClassFile(DataInputStream(ByteArrayInputStream(classBytes)))
+            classFile.methods.forEach { method ->
+                val codeLength = method.codeAttribute?.codeLength ?: 0
+                assertTrue("${classFile.name}.${method.name} is $codeLength bytes", codeLength < MAX_CODE_LENGTH)
+            }
+        }
+
+        val classLoader = GeneratedClassLoader(pool, bytes)
+        val registry = classLoader.loadClass(ServiceBuilderRegistry::class.java.name)
+        val get = registry.getMethod("get", Class::class.java)
+        intArrayOf(0, 1, 499, 500, 5_000, SERVICE_COUNT - 1).forEach { id ->
+            val service = classLoader.loadClass("$PACKAGE.Service$id")
+            val builders = get.invoke(null, service) as Set<*>
+            assertEquals(1, builders.size)
+            assertEquals("$PACKAGE.Service${id}_Builder", builders.first()!!.javaClass.name)
+            assertTrue(builders === get.invoke(null, service))
+        }
+        assertFalse(classLoader.isDefined("$PACKAGE.Service2_Builder"))
+        assertNull(get.invoke(null, String::class.java))
+    }
+
+    @Test
+    fun generateEmptyRegistry() {
+        val pool = ClassPool(true)
+        val bytes = ServiceBuilderRegistryGenerator(pool).generate(emptyList())
+
+        assertEquals(1, bytes.size)
+        val classLoader = GeneratedClassLoader(pool, bytes)
+        val registry = classLoader.loadClass(ServiceBuilderRegistry::class.java.name)
+        assertNull(registry.getMethod("get", Class::class.java).invoke(null, String::class.java))
+    }
+
+    private fun createServices(pool: ClassPool): List<BuilderElement> {
+        val serviceBuilder = pool.get(ServiceBuilder::class.java.name)
+        val elements = ArrayList<BuilderElement>(SERVICE_COUNT)
+        for (i in 0 until SERVICE_COUNT) {
+            val service = pool.makeInterface("$PACKAGE.Service$i")
+            val builder = pool.makeClass("$PACKAGE.Service${i}_Builder")
+            builder.addInterface(serviceBuilder)
+            builder.addConstructor(CtNewConstructor.defaultConstructor(builder))
+            builder.addMethod(CtNewMethod.make("public Object build() { return null; }", builder))
+            elements.add(BuilderElement(service.name).also { it.values = linkedSetOf(builder.name) })
+        }
+        return elements
+    }
+
+    /**
+     * Define the registry, the generated loader and services, everything else is loaded by the parent
+     */
+    private class GeneratedClassLoader(private val mPool: ClassPool, private val mBytes: Map<String, ByteArray>) :
+        ClassLoader(GeneratedClassLoader::class.java.classLoader) {
+
+        private val mDefined = HashSet<String>()
+
+        fun isDefined(name: String): Boolean {
+            return mDefined.contains(name)
+        }
+
+        override fun loadClass(name: String, resolve: Boolean): Class<*> {
+            synchronized(getClassLoadingLock(name)) {
+                findLoadedClass(name)?.let { return it }
+                val bytes = when {
+                    mBytes.containsKey(name) -> mBytes.getValue(name)
+                    name.startsWith(PACKAGE) || name.startsWith(ServiceBuilderRegistry::class.java.name) ->
+                        mPool.get(name).toBytecode()
+                    else -> return super.loadClass(name, resolve)
+                }
+                mDefined.add(name)
+                return defineClass(name, bytes, 0, bytes.size)
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.tablebird.serviceproviderbuilder.plugin
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author tablebird
+ * @date 2026/10/18
+ */
+class ServiceBuilderScanCacheTest {
+
+    companion object {
+        private const val HASH = "0123456789abcdef"
+        private const val OTHER_HASH = "fedcba9876543210"
+    }
+
+    @get:Rule
+    val mFolder = TemporaryFolder()
+
+    @Test
+    fun readWrittenScan() {
+        val cache = ServiceBuilderScanCache(mFolder.root)
+        assertNull(cache.get(HASH))
+
+        cache.put(HASH, createResult())
+
+        val result = cache.get(HASH)!!
+        assertTrue(result.hasRegistry)
+        assertEquals(2, result.classes.size)
+        val provider = result.classes[0]
+        assertEquals("a.IService", provider.className)
+        assertTrue(provider.isServiceProvider)
+        assertTrue(provider.isSingle)
+        val builder = result.classes[1]
+        assertEquals("a.Service_Builder", builder.className)
+        assertFalse(builder.isServiceProvider)
+        assertEquals(listOf("a.IService", "a.IOther"), builder.serviceProviders)
+        assertEquals(listOf(0, 1), builder.indexes)
+        assertEquals(listOf("", "named"), builder.names)
+        assertNull(cache.get(OTHER_HASH))
+    }
+
+    @Test
+    fun scanAgainCorruptScan() {
+        val cache = ServiceBuilderScanCache(mFolder.root)
+        cache.put(HASH, createResult())
+        val file = scanFiles().single()
+
+        file.writeBytes(file.readBytes().copyOf(file.length().toInt() / 2))
+        assertNull(cache.get(HASH))
+        file.writeText("not a scan")
+        assertNull(cache.get(HASH))
+
+        cache.put(HASH, createResult())
+        assertEquals(2, cache.get(HASH)!!.classes.size)
+        assertEquals(listOf(file), scanFiles())
+    }
+
+    @Test
+    fun cleanUpUnusedScansOfEveryVersion() {
+        val cache = ServiceBuilderScanCache(mFolder.root)
+        cache.put(HASH, createResult())
+        cache.put(OTHER_HASH, createResult())
+        val usedOldVersion = File(mFolder.root, "v1/01/$HASH")
+        val unusedOldVersion = File(mFolder.root, "v1/fe/$OTHER_HASH")
+        listOf(usedOldVersion, unusedOldVersion).forEach {
+            it.parentFile.mkdirs()
+            it.writeText("scan of an older version")
+        }
+        val now = System.currentTimeMillis()
+        val unused = now - ServiceBuilderScanCache.DEFAULT_MAX_UNUSED_AGE - TimeUnit.DAYS.toMillis(1)
+        scanFiles().filter { it != usedOldVersion }.forEach { it.setLastModified(unused) }
+        // A scan read is touched
+        assertNotNull(cache.get(HASH))
+
+        cache.cleanUp(now)
+
+        // Scans of other versions are still used by builds on another version of the plugin
+        assertTrue(usedOldVersion.isFile)
+        assertFalse(unusedOldVersion.parentFile.exists())
+        assertNotNull(cache.get(HASH))
+        assertNull(cache.get(OTHER_HASH))
+        assertEquals(2, scanFiles().size)
+    }
+
+    @Test
+    fun cleanUpOncePerInterval() {
+        val cache = ServiceBuilderScanCache(mFolder.root, TimeUnit.DAYS.toMillis(1))
+        val now = System.currentTimeMillis()
+        cache.cleanUp(now)
+        cache.put(HASH, createResult())
+        scanFiles().forEach { it.setLastModified(now - TimeUnit.DAYS.toMillis(2)) }
+
+        cache.cleanUp(now + ServiceBuilderScanCache.CLEAN_UP_INTERVAL / 2)
+        assertEquals(1, scanFiles().size)
+
+        cache.cleanUp(now + ServiceBuilderScanCache.CLEAN_UP_INTERVAL)
+        assertEquals(0, scanFiles().size)
+    }
+
+    private fun scanFiles(): List<File> {
+        return mFolder.root.walk().filter { it.isFile && (it.name == HASH || it.name == OTHER_HASH) }.toList()
+    }
+
+    private fun createResult(): ServiceBuilderScanResult {
+        val result = ServiceBuilderScanResult()
+        result.hasRegistry = true
+        result.classes.add(ServiceBuilderScanResult.ScannedClass(
+            "a.IService", true, true, emptyList(), emptyList(), emptyList()))
+        result.classes.add(ServiceBuilderScanResult.ScannedClass(
+            "a.Service_Builder", false, false, listOf("a.IService", "a.IOther"), listOf(0, 1), listOf("", "named")))
+        return result
+    }
+}
@@ -0,0 +1,55 @@
+package com.tablebird.serviceproviderbuilder;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * An service achieve builder generated by the processor, describing the built service achieve.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public abstract class AbstractServiceBuilder<S> implements ServiceBuilder<S> {
+
+    private static final Class<?>[] NO_DEPENDENCIES = new Class<?>[0];
+
+    /**
+     * @return instance scope of built service achieve
+     */
+    @NonNull
+    public ServiceScope getScope() {
+        return ServiceScope.PROTOTYPE;
+    }
+
+    /**
+     * @return priority of built service achieve, service achieves with higher priority are built first
+     */
+    public int getPriority() {
+        return 0;
+    }
+
+    /**
+     * @return name of built service achieve, or null if unnamed
+     */
+    @Nullable
+    public String getName() {
+        return null;
+    }
+
+    /**
+     * @return service providers injected into built service achieve, built before it. The array is
+     * shared and must not be modified
+     */
+    @NonNull
+    public Class<?>[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    /**
+     * @return class of built service achieve, or null if unknown
+     */
+    @Nullable
+    public Class<?> getImplementationClass() {
+        return null;
+    }
+}
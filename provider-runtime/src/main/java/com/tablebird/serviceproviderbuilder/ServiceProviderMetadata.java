@@ -0,0 +1,29 @@
+package com.tablebird.serviceproviderbuilder;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Generated metadata of an service provider interface, the generated class named
+ * {@code ServiceProviderInterface_ServiceProvider} is next to the interface.
+ *
+ * @author tablebird
+ * @date 2026/10/18
+ */
+public abstract class ServiceProviderMetadata<S> {
+
+    public static final String SUFFIX = "_ServiceProvider";
+
+    @NonNull
+    public abstract ServiceProviderPolicy getPolicy();
+
+    /**
+     * @param serviceBuilder builder of the implementation, called on the first method call of the proxy
+     * @return generated lazy proxy {@code ServiceProviderInterface_LazyProxy}, or null if the service
+     * provider has no lazy proxy
+     */
+    @Nullable
+    public S newLazyService(@NonNull ServiceBuilder<? extends S> serviceBuilder) {
+        return null;
+    }
+}
@@ -23,4 +23,5 @@
 -keep class com.tablebird.serviceproviderbuilder.*
 -keep public class * extends com.tablebird.serviceproviderbuilder.ServiceBuilder{
 }
--keep @com.tablebird.serviceproviderbuilder.ServiceProvider class * {}
\ No newline at end of file
+-keep @com.tablebird.serviceproviderbuilder.ServiceProvider class * {}
+-adaptclassstrings com.tablebird.serviceproviderbuilder.ServiceBuilderRegistry_Index*
\ No newline at end of file